@@ -0,0 +1,42 @@
+package org.example.shop;
+
+public class Address {
+    private final String country;
+
+    private final String city;
+
+    private final String street;
+
+    private final String zipCode;
+
+    public Address(String country, String city, String street, String zipCode) {
+        this.country = country;
+        this.city = city;
+        this.street = street;
+        this.zipCode = zipCode;
+    }
+
+    public String getCountry() {
+        return country;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    public String getStreet() {
+        return street;
+    }
+
+    public String getZipCode() {
+        return zipCode;
+    }
+
+    public boolean isDomestic(String homeCountry) {
+        return country.equalsIgnoreCase(homeCountry);
+    }
+
+    public String format() {
+        return street + ", " + city + " " + zipCode + ", " + country;
+    }
+}
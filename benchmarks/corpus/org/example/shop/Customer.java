@@ -0,0 +1,70 @@
+package org.example.shop;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class Customer extends Entity {
+    private final String name;
+
+    private Address address;
+
+    private int loyaltyPoints;
+
+    private final List<Order> orders = new ArrayList<>();
+
+    public Customer(long id, String name, Address address) {
+        super(id);
+        this.name = name;
+        this.address = address;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Address getAddress() {
+        return address;
+    }
+
+    public void setAddress(Address address) {
+        this.address = address;
+    }
+
+    public int getLoyaltyPoints() {
+        return loyaltyPoints;
+    }
+
+    public void addLoyaltyPoints(int points) {
+        if (points < 0) {
+            throw new IllegalArgumentException("Negative points: " + points);
+        }
+
+        loyaltyPoints += points;
+    }
+
+    public List<Order> getOrders() {
+        return orders;
+    }
+
+    public void place(Order order) {
+        orders.add(order);
+    }
+
+    public long totalSpent() {
+        long total = 0;
+        for (Order order : orders) {
+            total += order.total();
+        }
+
+        return total;
+    }
+
+    public boolean isFrequentBuyer() {
+        return orders.size() > 10 && loyaltyPoints > 100;
+    }
+
+    @Override
+    public String describe() {
+        return "Customer " + name + " (" + getId() + ")";
+    }
+}
@@ -0,0 +1,29 @@
+package org.example.shop;
+
+public abstract class Entity {
+    private final long id;
+
+    protected Entity(long id) {
+        this.id = id;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public abstract String describe();
+
+    public String describeBriefly() {
+        return describe();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Entity && ((Entity) other).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(id);
+    }
+}
@@ -0,0 +1,40 @@
+package org.example.shop;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class Inventory {
+    private final Map<String, Integer> stock = new HashMap<>();
+
+    public int available(Product product) {
+        return stock.getOrDefault(product.getSku(), 0);
+    }
+
+    public void restock(Product product, int quantity) {
+        stock.merge(product.getSku(), quantity, Integer::sum);
+    }
+
+    public boolean canFulfil(Order order) {
+        for (OrderLine line : order.getLines()) {
+            if (available(line.getProduct()) < line.getQuantity()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public void reserve(Order order) {
+        if (!canFulfil(order)) {
+            throw new IllegalStateException("Not enough stock for " + order.describe());
+        }
+
+        for (OrderLine line : order.getLines()) {
+            stock.merge(line.getProduct().getSku(), -line.getQuantity(), Integer::sum);
+        }
+    }
+
+    public String report(Product product) {
+        return product.getTitle() + ": " + available(product);
+    }
+}
@@ -0,0 +1,84 @@
+package org.example.shop;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class Order extends Entity {
+    private final Customer customer;
+
+    private final List<OrderLine> lines = new ArrayList<>();
+
+    private Status status = Status.NEW;
+
+    public Order(long id, Customer customer) {
+        super(id);
+        this.customer = customer;
+    }
+
+    public Customer getCustomer() {
+        return customer;
+    }
+
+    public List<OrderLine> getLines() {
+        return Collections.unmodifiableList(lines);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void add(Product product, int quantity) {
+        for (OrderLine line : lines) {
+            if (line.getProduct().getSku().equals(product.getSku())) {
+                line.setQuantity(line.getQuantity() + quantity);
+                return;
+            }
+        }
+
+        lines.add(new OrderLine(product, quantity));
+    }
+
+    public long total() {
+        long total = 0;
+        for (OrderLine line : lines) {
+            total += line.total();
+        }
+
+        return total;
+    }
+
+    public double weight() {
+        double weight = 0;
+        for (OrderLine line : lines) {
+            weight += line.weight();
+        }
+
+        return weight;
+    }
+
+    public void ship() {
+        checkStatus(Status.PAID);
+        status = Status.SHIPPED;
+    }
+
+    public void pay() {
+        checkStatus(Status.NEW);
+        status = Status.PAID;
+    }
+
+    private void checkStatus(Status expected) {
+        if (status != expected) {
+            throw new IllegalStateException("Order " + getId() + " is " + status + ", expected " + expected);
+        }
+    }
+
+    @Override
+    public String describe() {
+        return "Order " + getId() + " of " + customer.getName() + ": " + lines.size() + " lines";
+    }
+
+    public enum Status {
+        NEW, PAID, SHIPPED
+    }
+}
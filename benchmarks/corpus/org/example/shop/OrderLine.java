@@ -0,0 +1,32 @@
+package org.example.shop;
+
+public class OrderLine {
+    private final Product product;
+
+    private int quantity;
+
+    public OrderLine(Product product, int quantity) {
+        this.product = product;
+        this.quantity = quantity;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public long total() {
+        return product.getPriceInCents() * quantity;
+    }
+
+    public double weight() {
+        return product.getWeight() * quantity;
+    }
+}
@@ -0,0 +1,40 @@
+package org.example.shop;
+
+public class OrderProcessor {
+    private final Inventory inventory;
+
+    private final PriceCalculator calculator;
+
+    private final ShippingService shipping;
+
+    public OrderProcessor(Inventory inventory, PriceCalculator calculator, ShippingService shipping) {
+        this.inventory = inventory;
+        this.calculator = calculator;
+        this.shipping = shipping;
+    }
+
+    public long process(Order order) {
+        inventory.reserve(order);
+        order.pay();
+
+        long price = calculator.price(order) + shipping.cost(order);
+        calculator.reward(order.getCustomer(), order);
+
+        order.ship();
+
+        return price;
+    }
+
+    public String summary(Order order, Customer customer) {
+        return customer.describe() + " ordered " + order.getLines().size() + " items for " +
+            calculator.price(order) + ", shipping to " + customer.getAddress().format();
+    }
+
+    public boolean isLarge(Order order) {
+        return order.total() > 100_000 || shipping.needsFreight(order);
+    }
+
+    public long process(Order first, Order second) {
+        return process(first) + process(second);
+    }
+}
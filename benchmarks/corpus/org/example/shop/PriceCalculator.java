@@ -0,0 +1,61 @@
+package org.example.shop;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class PriceCalculator {
+    private final Map<String, Integer> discountsBySku = new HashMap<>();
+
+    private int loyaltyDiscountPercent = 5;
+
+    public void addDiscount(String sku, int percent) {
+        discountsBySku.put(sku, percent);
+    }
+
+    public int getLoyaltyDiscountPercent() {
+        return loyaltyDiscountPercent;
+    }
+
+    public void setLoyaltyDiscountPercent(int loyaltyDiscountPercent) {
+        this.loyaltyDiscountPercent = loyaltyDiscountPercent;
+    }
+
+    public long discountedPrice(Product product) {
+        Integer percent = discountsBySku.get(product.getSku());
+        if (percent == null) {
+            return product.getPriceInCents();
+        }
+
+        return product.getPriceInCents() * (100 - percent) / 100;
+    }
+
+    public long price(Order order) {
+        long total = 0;
+        for (OrderLine line : order.getLines()) {
+            total += discountedPrice(line.getProduct()) * line.getQuantity();
+        }
+
+        if (order.getCustomer().isFrequentBuyer()) {
+            total = total * (100 - loyaltyDiscountPercent) / 100;
+        }
+
+        return total;
+    }
+
+    public int rewardPoints(Customer customer, Order order) {
+        int points = (int) (order.total() / 1000);
+        if (customer.isFrequentBuyer()) {
+            points *= 2;
+        }
+
+        return points;
+    }
+
+    public void reward(Customer customer, Order order) {
+        customer.addLoyaltyPoints(rewardPoints(customer, order));
+    }
+
+    public static long percentOf(long amount, int percent) {
+        return amount * percent / 100;
+    }
+}
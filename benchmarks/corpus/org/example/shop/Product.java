@@ -0,0 +1,55 @@
+package org.example.shop;
+
+public class Product {
+    private final String sku;
+
+    private final String title;
+
+    private long priceInCents;
+
+    private double weight;
+
+    public Product(String sku, String title, long priceInCents, double weight) {
+        this.sku = sku;
+        this.title = title;
+        this.priceInCents = priceInCents;
+        this.weight = weight;
+    }
+
+    public String getSku() {
+        return sku;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public long getPriceInCents() {
+        return priceInCents;
+    }
+
+    public void setPriceInCents(long priceInCents) {
+        this.priceInCents = priceInCents;
+    }
+
+    public double getWeight() {
+        return weight;
+    }
+
+    public void setWeight(double weight) {
+        this.weight = weight;
+    }
+
+    public boolean isHeavy() {
+        return weight > 20.0;
+    }
+
+    public static Product free(String sku, String title) {
+        return new Product(sku, title, 0, 0.0);
+    }
+
+    @Override
+    public String toString() {
+        return sku + " " + title;
+    }
+}
@@ -0,0 +1,51 @@
+package org.example.shop;
+
+public class ShippingService {
+    private static final long BASE_COST = 500;
+
+    private final String homeCountry;
+
+    private final long costPerKilogram;
+
+    public ShippingService(String homeCountry, long costPerKilogram) {
+        this.homeCountry = homeCountry;
+        this.costPerKilogram = costPerKilogram;
+    }
+
+    public long cost(Order order) {
+        long cost = BASE_COST + Math.round(order.weight() * costPerKilogram);
+        if (!order.getCustomer().getAddress().isDomestic(homeCountry)) {
+            cost *= 2;
+        }
+
+        return cost;
+    }
+
+    public String label(Order order, Address address) {
+        StringBuilder label = new StringBuilder();
+        label.append(order.getCustomer().getName()).append('\n');
+        label.append(address.getStreet()).append('\n');
+        label.append(address.getZipCode()).append(' ').append(address.getCity()).append('\n');
+        label.append(address.getCountry().toUpperCase());
+
+        return label.toString();
+    }
+
+    public boolean needsFreight(Order order) {
+        for (OrderLine line : order.getLines()) {
+            if (line.getProduct().isHeavy()) {
+                return true;
+            }
+        }
+
+        return order.weight() > 100.0;
+    }
+
+    public String getHomeCountry() {
+        return homeCountry;
+    }
+
+    public long estimate(Order order) {
+        return cost(order);
+    }
+}
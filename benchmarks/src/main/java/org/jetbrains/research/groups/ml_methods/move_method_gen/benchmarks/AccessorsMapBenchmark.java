@@ -0,0 +1,18 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.benchmarks;
+
+import org.jetbrains.research.groups.ml_methods.move_method_gen.AccessorsMap;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Construction of {@link AccessorsMap} from all methods of the corpus.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class AccessorsMapBenchmark {
+    @Benchmark
+    public AccessorsMap createAccessorsMap(final CorpusState corpus) {
+        return CorpusState.inReadAction(() -> new AccessorsMap(corpus.getMethods()));
+    }
+}
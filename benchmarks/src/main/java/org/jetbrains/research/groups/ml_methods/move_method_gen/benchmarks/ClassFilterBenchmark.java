@@ -0,0 +1,59 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.benchmarks;
+
+import com.intellij.psi.PsiClass;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.ProjectInfo;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.Filter;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Throughput of every class filter. One operation is a check of all classes of the corpus by a
+ * single filter.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class ClassFilterBenchmark {
+    @Param({
+        "TypeParametersFilter",
+        "InterfacesFilter",
+        "AnnotationTypesFilter",
+        "TestsFilter",
+        "BuildersFilter",
+        "EmptyClassesFilter",
+        "AnonymousClassesFilter",
+        "InaccessibleClassFilter",
+        "GenericsFilter"
+    })
+    public String filterName;
+
+    private Filter<PsiClass> filter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (Filter<PsiClass> candidate : ProjectInfo.createClassFilters()) {
+            if (candidate.getClass().getSimpleName().equals(filterName)) {
+                filter = candidate;
+            }
+        }
+
+        if (filter == null) {
+            throw new IllegalArgumentException("Unknown class filter: " + filterName);
+        }
+    }
+
+    @Benchmark
+    public int filterClasses(final CorpusState corpus) {
+        return CorpusState.inReadAction(() -> {
+            int accepted = 0;
+            for (PsiClass aClass : corpus.getAllClasses()) {
+                if (filter.test(aClass)) {
+                    accepted++;
+                }
+            }
+
+            return accepted;
+        });
+    }
+}
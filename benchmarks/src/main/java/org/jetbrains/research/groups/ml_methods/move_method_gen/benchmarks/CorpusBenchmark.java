@@ -0,0 +1,335 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.benchmarks;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.GitUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Generates datasets for local checkouts of projects of the reference corpus, reports how fast
+ * it is done and checks results against the reference datasets. Every project is generated by a
+ * separate run of the generator, so peak heap usage belongs to the project alone. A checkout
+ * must be at the commit recorded in meta-info of its reference dataset. Exits with a non-zero
+ * code if some project fails or its dataset differs from the reference one.
+ */
+public class CorpusBenchmark {
+    private static final @NotNull String CHECKOUTS_PROPERTY = "movemethodgen.corpus.checkouts";
+
+    private static final @NotNull String REFERENCE_PROPERTY = "movemethodgen.corpus.reference";
+
+    private static final @NotNull String OUTPUT_PROPERTY = "movemethodgen.corpus.output";
+
+    private static final @NotNull String PROJECTS_PROPERTY = "movemethodgen.corpus.projects";
+
+    private static final @NotNull String ROOT_PROPERTY = "movemethodgen.corpus.root";
+
+    private static final @NotNull String OPTIONS_PREFIX = "movemethodgen.";
+
+    private static final @NotNull String CORPUS_OPTIONS_PREFIX = "movemethodgen.corpus.";
+
+    private static final @NotNull String REPORT_FILE_NAME = "corpus-report.json";
+
+    private static final @NotNull String TOTAL_METHODS_LOG_PREFIX = "Total number of methods: ";
+
+    private final @NotNull Path checkoutsDir;
+
+    private final @NotNull Path referenceDir;
+
+    private final @NotNull Path outputDir;
+
+    private final @NotNull Path rootDir;
+
+    private CorpusBenchmark(
+        final @NotNull Path checkoutsDir,
+        final @NotNull Path referenceDir,
+        final @NotNull Path outputDir,
+        final @NotNull Path rootDir
+    ) {
+        this.checkoutsDir = checkoutsDir;
+        this.referenceDir = referenceDir;
+        this.outputDir = outputDir;
+        this.rootDir = rootDir;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String checkouts = System.getProperty(CHECKOUTS_PROPERTY);
+        if (checkouts == null) {
+            System.err.println("Directory with checkouts of projects is not set: " + CHECKOUTS_PROPERTY);
+            System.exit(1);
+            return;
+        }
+
+        CorpusBenchmark benchmark = new CorpusBenchmark(
+            Paths.get(checkouts).toAbsolutePath(),
+            Paths.get(System.getProperty(REFERENCE_PROPERTY, "data/mined-data-iwor")).toAbsolutePath(),
+            Paths.get(System.getProperty(OUTPUT_PROPERTY, "corpus-benchmark")).toAbsolutePath(),
+            Paths.get(System.getProperty(ROOT_PROPERTY, ".")).toAbsolutePath()
+        );
+
+        String projects = System.getProperty(PROJECTS_PROPERTY);
+        List<ProjectResult> results = benchmark.run(
+            projects == null ? null : Arrays.stream(projects.split(",")).map(String::trim).collect(Collectors.toList())
+        );
+
+        boolean passed = results.stream().allMatch(ProjectResult::isPassed);
+        System.out.println(passed ? "All projects passed" : "Some projects failed");
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * @param projects names of projects to process, {@code null} means all projects of the
+     *                 reference corpus.
+     */
+    private @NotNull List<ProjectResult> run(final @Nullable List<String> projects) throws IOException {
+        List<String> names = projects;
+        if (names == null) {
+            try (Stream<Path> children = Files.list(referenceDir)) {
+                names = children.filter(Files::isDirectory)
+                    .map(it -> it.getFileName().toString())
+                    .sorted()
+                    .collect(Collectors.toList());
+            }
+        }
+
+        List<ProjectResult> results = new ArrayList<>();
+        for (String name : names) {
+            ProjectResult result = new ProjectResult(name);
+            try {
+                process(result);
+            } catch (IOException | InterruptedException e) {
+                result.failure = e.getMessage();
+            }
+
+            System.out.println(result.getDescription());
+            results.add(result);
+        }
+
+        writeReport(results);
+
+        return results;
+    }
+
+    private void process(final @NotNull ProjectResult result) throws IOException, InterruptedException {
+        Path checkout = checkoutsDir.resolve(result.name);
+        Path reference = referenceDir.resolve(result.name);
+
+        if (!Files.isDirectory(checkout)) {
+            result.failure = "no checkout at " + checkout;
+            return;
+        }
+
+        String expectedCommit = GitUtils.readMetaInfoCommit(reference);
+        String actualCommit = GitUtils.headCommit(checkout);
+        if (!expectedCommit.equals(actualCommit)) {
+            result.failure = "checkout is at " + actualCommit + " instead of " + expectedCommit;
+            return;
+        }
+
+        // Generator writes dataset into a folder named after the project folder and never overwrites files
+        Path generated = outputDir.resolve(checkout.getFileName());
+        FileUtil.delete(generated.toFile());
+        Files.createDirectories(outputDir);
+
+        long start = System.nanoTime();
+        int exitCode = generate(checkout).waitFor();
+        result.wallTimeNanos = System.nanoTime() - start;
+
+        if (exitCode != 0) {
+            result.failure = "generation exited with code " + exitCode;
+            return;
+        }
+
+        readTimings(generated, result);
+        result.methods = readNumberOfMethods(generated);
+        result.comparison = DatasetComparison.compare(reference, generated);
+    }
+
+    /**
+     * Starts generation with the same {@code movemethodgen} options as this run has, except of
+     * options of the benchmark itself.
+     */
+    private @NotNull Process generate(final @NotNull Path checkout) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(rootDir.resolve(isWindows() ? "gradlew.bat" : "gradlew").toString());
+        command.add("--console=plain");
+        command.add("-p");
+        command.add(rootDir.toString());
+        command.add("runGeneration");
+        command.add("-PprojectFolder=" + checkout);
+        command.add("-PoutputDir=" + outputDir);
+
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith(OPTIONS_PREFIX) && !key.startsWith(CORPUS_OPTIONS_PREFIX)) {
+                command.add("-P" + key + "=" + System.getProperty(key));
+            }
+        }
+
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    private static void readTimings(final @NotNull Path dir, final @NotNull ProjectResult result) throws IOException {
+        Path file = dir.resolve("timings.json");
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        JsonObject timings;
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            timings = new JsonParser().parse(reader).getAsJsonObject();
+        }
+
+        if (timings.has("peak_heap_bytes")) {
+            result.peakHeapBytes = timings.get("peak_heap_bytes").getAsLong();
+        }
+
+        for (JsonElement phase : timings.getAsJsonArray("phases")) {
+            JsonObject stats = phase.getAsJsonObject();
+            result.phaseNanos.put(stats.get("name").getAsString(), stats.get("total_nanos").getAsLong());
+        }
+    }
+
+    /**
+     * Reads the number of analysed methods from the log of the generator.
+     *
+     * @return number of methods or {@code -1} if it is not found.
+     */
+    private static long readNumberOfMethods(final @NotNull Path dir) throws IOException {
+        Path log = dir.resolve("log");
+        if (!Files.exists(log)) {
+            return -1;
+        }
+
+        long methods = -1;
+        for (String line : Files.readAllLines(log, StandardCharsets.UTF_8)) {
+            int index = line.indexOf(TOTAL_METHODS_LOG_PREFIX);
+            if (index != -1) {
+                methods = Long.parseLong(line.substring(index + TOTAL_METHODS_LOG_PREFIX.length()).trim());
+            }
+        }
+
+        return methods;
+    }
+
+    private void writeReport(final @NotNull List<ProjectResult> results) throws IOException {
+        JsonArray projects = new JsonArray();
+        for (ProjectResult result : results) {
+            projects.add(result.toJson());
+        }
+
+        JsonObject root = new JsonObject();
+        root.add("projects", projects);
+
+        Files.createDirectories(outputDir);
+        try (BufferedWriter writer = Files.newBufferedWriter(outputDir.resolve(REPORT_FILE_NAME))) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(root, writer);
+        }
+    }
+
+    private static boolean isWindows() {
+        return File.separatorChar == '\\';
+    }
+
+    private static class ProjectResult {
+        private final @NotNull String name;
+
+        private @Nullable String failure;
+
+        private long wallTimeNanos = -1;
+
+        private long peakHeapBytes = -1;
+
+        private long methods = -1;
+
+        private final @NotNull Map<String, Long> phaseNanos = new LinkedHashMap<>();
+
+        private @Nullable DatasetComparison comparison;
+
+        private ProjectResult(final @NotNull String name) {
+            this.name = name;
+        }
+
+        private boolean isPassed() {
+            return failure == null && comparison != null && comparison.isEqual();
+        }
+
+        private double getMethodsPerSecond() {
+            if (methods < 0 || wallTimeNanos <= 0) {
+                return -1;
+            }
+
+            return methods / (wallTimeNanos / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+
+        private @NotNull String getDescription() {
+            if (failure != null) {
+                return name + ": failed, " + failure;
+            }
+
+            StringBuilder description = new StringBuilder(String.format(
+                "%s: wall time %d s, peak heap %d MB, %d methods, %.1f methods/s",
+                name,
+                TimeUnit.NANOSECONDS.toSeconds(wallTimeNanos),
+                peakHeapBytes < 0 ? -1 : peakHeapBytes / (1024 * 1024),
+                methods,
+                getMethodsPerSecond()
+            ));
+
+            phaseNanos.forEach((phase, nanos) -> description.append(String.format(
+                "%n    %-50s %10d ms", phase, TimeUnit.NANOSECONDS.toMillis(nanos)
+            )));
+
+            if (comparison != null) {
+                description.append(System.lineSeparator()).append("    ").append(comparison.getDescription());
+            }
+
+            return description.toString();
+        }
+
+        private @NotNull JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("name", name);
+            json.addProperty("passed", isPassed());
+
+            if (failure != null) {
+                json.addProperty("failure", failure);
+                return json;
+            }
+
+            json.addProperty("wall_time_nanos", wallTimeNanos);
+            json.addProperty("peak_heap_bytes", peakHeapBytes);
+            json.addProperty("methods", methods);
+            json.addProperty("methods_per_second", getMethodsPerSecond());
+
+            JsonObject phases = new JsonObject();
+            phaseNanos.forEach((phase, nanos) -> phases.addProperty(phase, nanos));
+            json.add("phase_total_nanos", phases);
+
+            if (comparison != null) {
+                json.addProperty("missing_classes", comparison.getMissingClasses().size());
+                json.addProperty("unexpected_classes", comparison.getUnexpectedClasses().size());
+                json.addProperty("missing_methods", comparison.getMissingMethods().size());
+                json.addProperty("unexpected_methods", comparison.getUnexpectedMethods().size());
+            }
+
+            return json;
+        }
+    }
+}
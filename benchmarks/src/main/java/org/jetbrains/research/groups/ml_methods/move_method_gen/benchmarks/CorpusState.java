@@ -0,0 +1,156 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.benchmarks;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.projectRoots.JavaSdk;
+import com.intellij.openapi.projectRoots.Sdk;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.*;
+import com.intellij.testFramework.EdtTestUtil;
+import com.intellij.testFramework.LightProjectDescriptor;
+import com.intellij.testFramework.fixtures.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.AccessorsMap;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.ProjectInfo;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.RelevantClasses;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.analysis.InheritanceIndex;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.analysis.MethodFactsCache;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.analysis.ReferenceResolver;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.Filter;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.ExtractingUtils;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Java sources of the benchmark corpus loaded into a light test fixture, along with everything
+ * methods filters need. Classes and methods are prepared the same way {@link ProjectInfo} does
+ * it. The corpus directory is given by a system property which the gradle task sets.
+ */
+@State(Scope.Benchmark)
+public class CorpusState {
+    private static final @NotNull String CORPUS_PROPERTY = "movemethodgen.benchmarks.corpus";
+
+    private static final @NotNull LightProjectDescriptor PROJECT_DESCRIPTOR = new DefaultLightProjectDescriptor() {
+        @Override
+        public Sdk getSdk() {
+            return JavaSdk.getInstance().createJdk("java 1.8", System.getenv("JAVA_HOME"), false);
+        }
+    };
+
+    private CodeInsightTestFixture fixture;
+
+    private List<PsiClass> allClasses;
+
+    private List<PsiClass> classes;
+
+    private List<PsiMethod> methods;
+
+    private MethodFactsCache methodFacts;
+
+    private InheritanceIndex inheritanceIndex;
+
+    private RelevantClasses relevantClasses;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        String corpusPath = System.getProperty(CORPUS_PROPERTY);
+        if (corpusPath == null) {
+            throw new IllegalStateException("Corpus directory is not set: " + CORPUS_PROPERTY);
+        }
+
+        IdeaTestFixtureFactory factory = IdeaTestFixtureFactory.getFixtureFactory();
+        fixture = factory.createCodeInsightFixture(factory.createLightFixtureBuilder(PROJECT_DESCRIPTOR).getFixture());
+        fixture.setTestDataPath(corpusPath);
+
+        List<VirtualFile> roots = new ArrayList<>();
+        EdtTestUtil.runInEdtAndWait(() -> {
+            fixture.setUp();
+            roots.add(fixture.copyDirectoryToProject("", ""));
+        });
+
+        inReadAction(() -> {
+            List<PsiJavaFile> files = new ArrayList<>();
+            VfsUtilCore.iterateChildrenRecursively(roots.get(0), null, file -> {
+                PsiFile psiFile = PsiManager.getInstance(getProject()).findFile(file);
+                if (psiFile instanceof PsiJavaFile) {
+                    files.add((PsiJavaFile) psiFile);
+                }
+
+                return true;
+            });
+
+            List<Filter<PsiClass>> classFilters = ProjectInfo.createClassFilters();
+
+            allClasses = ExtractingUtils.extractClasses(files);
+            classes = allClasses.stream()
+                .filter(it -> classFilters.stream().allMatch(filter -> filter.test(it)))
+                .collect(Collectors.toList());
+            methods = ExtractingUtils.extractMethods(classes);
+
+            methodFacts = new MethodFactsCache(new AccessorsMap(methods), ReferenceResolver.DIRECT);
+            inheritanceIndex = new InheritanceIndex(files);
+            relevantClasses = new RelevantClasses(classes, methodFacts);
+
+            return null;
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        EdtTestUtil.runInEdtAndWait(() -> fixture.tearDown());
+    }
+
+    /**
+     * Forgets everything computed for methods so far, so that the next pass over the corpus
+     * computes it again like a generation run does.
+     */
+    public void clearCaches() {
+        methodFacts.clearCache();
+        inheritanceIndex.clearCache();
+        relevantClasses.clearCache();
+    }
+
+    public static <T> T inReadAction(final @NotNull Computable<T> computable) {
+        return ApplicationManager.getApplication().runReadAction(computable);
+    }
+
+    public @NotNull Project getProject() {
+        return fixture.getProject();
+    }
+
+    /**
+     * Returns all classes of the corpus, including the ones which don't pass class filters.
+     */
+    public @NotNull List<PsiClass> getAllClasses() {
+        return allClasses;
+    }
+
+    public @NotNull List<PsiClass> getClasses() {
+        return classes;
+    }
+
+    public @NotNull List<PsiMethod> getMethods() {
+        return methods;
+    }
+
+    public @NotNull MethodFactsCache getMethodFacts() {
+        return methodFacts;
+    }
+
+    public @NotNull InheritanceIndex getInheritanceIndex() {
+        return inheritanceIndex;
+    }
+
+    public @NotNull RelevantClasses getRelevantClasses() {
+        return relevantClasses;
+    }
+}
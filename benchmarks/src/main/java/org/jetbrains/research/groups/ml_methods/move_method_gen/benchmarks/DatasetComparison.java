@@ -0,0 +1,193 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.benchmarks;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Difference between {@code classes.csv} and {@code methods.csv} of two datasets of the same
+ * project. Ids of classes and methods are not compared, since they depend on the order of
+ * generation. Classes are compared by their names, files and offsets, methods are compared by
+ * the same properties along with their containing and target classes. Files may be written
+ * either with headers, by the current serializers, or without them, in the format of
+ * data/mined-data-iwor. Columns which are not present in both formats are ignored.
+ */
+public class DatasetComparison {
+    private static final @NotNull String CLASSES_FILE_NAME = "classes.csv";
+
+    private static final @NotNull String METHODS_FILE_NAME = "methods.csv";
+
+    private static final @NotNull List<String> HEADERLESS_CLASSES_COLUMNS = Arrays.asList("id", "name", "file", "offset");
+
+    private static final @NotNull List<String> HEADERLESS_METHODS_COLUMNS =
+        Arrays.asList("id", "name", "file", "offset", "containing_class_id", "target_ids");
+
+    private static final int MAX_REPORTED_DIFFERENCES = 10;
+
+    private final @NotNull Set<String> missingClasses;
+
+    private final @NotNull Set<String> unexpectedClasses;
+
+    private final @NotNull Set<String> missingMethods;
+
+    private final @NotNull Set<String> unexpectedMethods;
+
+    private DatasetComparison(
+        final @NotNull Dataset expected,
+        final @NotNull Dataset actual
+    ) {
+        missingClasses = difference(expected.classes, actual.classes);
+        unexpectedClasses = difference(actual.classes, expected.classes);
+        missingMethods = difference(expected.methods, actual.methods);
+        unexpectedMethods = difference(actual.methods, expected.methods);
+    }
+
+    /**
+     * @param expectedDir directory with the reference dataset.
+     * @param actualDir directory with the dataset which is checked against the reference.
+     */
+    public static @NotNull DatasetComparison compare(
+        final @NotNull Path expectedDir,
+        final @NotNull Path actualDir
+    ) throws IOException {
+        return new DatasetComparison(Dataset.read(expectedDir), Dataset.read(actualDir));
+    }
+
+    public boolean isEqual() {
+        return missingClasses.isEmpty() && unexpectedClasses.isEmpty() &&
+            missingMethods.isEmpty() && unexpectedMethods.isEmpty();
+    }
+
+    public @NotNull Set<String> getMissingClasses() {
+        return missingClasses;
+    }
+
+    public @NotNull Set<String> getUnexpectedClasses() {
+        return unexpectedClasses;
+    }
+
+    public @NotNull Set<String> getMissingMethods() {
+        return missingMethods;
+    }
+
+    public @NotNull Set<String> getUnexpectedMethods() {
+        return unexpectedMethods;
+    }
+
+    /**
+     * Returns numbers of differences of every kind along with a few examples of them.
+     */
+    public @NotNull String getDescription() {
+        if (isEqual()) {
+            return "datasets are equal";
+        }
+
+        StringBuilder description = new StringBuilder();
+        describe(description, "missing classes", missingClasses);
+        describe(description, "unexpected classes", unexpectedClasses);
+        describe(description, "missing methods", missingMethods);
+        describe(description, "unexpected methods", unexpectedMethods);
+
+        return description.toString().trim();
+    }
+
+    private static void describe(
+        final @NotNull StringBuilder description,
+        final @NotNull String kind,
+        final @NotNull Set<String> differences
+    ) {
+        if (differences.isEmpty()) {
+            return;
+        }
+
+        description.append(kind).append(": ").append(differences.size()).append(System.lineSeparator());
+        differences.stream()
+            .limit(MAX_REPORTED_DIFFERENCES)
+            .forEach(it -> description.append("    ").append(it).append(System.lineSeparator()));
+    }
+
+    private static @NotNull Set<String> difference(final @NotNull Set<String> from, final @NotNull Set<String> what) {
+        Set<String> result = new TreeSet<>(from);
+        result.removeAll(what);
+
+        return result;
+    }
+
+    private static class Dataset {
+        private final @NotNull Set<String> classes = new HashSet<>();
+
+        private final @NotNull Set<String> methods = new HashSet<>();
+
+        private static @NotNull Dataset read(final @NotNull Path dir) throws IOException {
+            Dataset dataset = new Dataset();
+
+            Map<String, String> classById = new HashMap<>();
+            for (Map<String, String> record : readRecords(dir.resolve(CLASSES_FILE_NAME), HEADERLESS_CLASSES_COLUMNS)) {
+                String key = record.get("name") + " " + record.get("file") + ":" + record.get("offset");
+
+                classById.put(record.get("id"), key);
+                dataset.classes.add(key);
+            }
+
+            for (Map<String, String> record : readRecords(dir.resolve(METHODS_FILE_NAME), HEADERLESS_METHODS_COLUMNS)) {
+                String targets = Arrays.stream(record.getOrDefault("target_ids", "").split(" "))
+                    .filter(it -> !it.isEmpty())
+                    .map(it -> classById.getOrDefault(it, "unknown class " + it))
+                    .sorted()
+                    .collect(Collectors.joining(", "));
+
+                dataset.methods.add(
+                    record.get("name") + " " + record.get("file") + ":" + record.get("offset") +
+                    " in " + classById.getOrDefault(record.get("containing_class_id"), "unknown class") +
+                    " -> [" + targets + "]"
+                );
+            }
+
+            return dataset;
+        }
+
+        /**
+         * Reads records of a csv file as maps from names of columns to values. A file without a
+         * header is expected to have the given columns.
+         */
+        private static @NotNull List<Map<String, String>> readRecords(
+            final @NotNull Path file,
+            final @NotNull List<String> headerlessColumns
+        ) throws IOException {
+            List<CSVRecord> records;
+            try (BufferedReader reader = Files.newBufferedReader(file)) {
+                records = CSVFormat.RFC4180.parse(reader).getRecords();
+            }
+
+            List<String> columns = headerlessColumns;
+            int first = 0;
+            if (!records.isEmpty() && records.get(0).get(0).equals("id")) {
+                columns = new ArrayList<>();
+                for (String column : records.get(0)) {
+                    columns.add(column);
+                }
+
+                first = 1;
+            }
+
+            List<Map<String, String>> result = new ArrayList<>();
+            for (CSVRecord record : records.subList(first, records.size())) {
+                Map<String, String> values = new HashMap<>();
+                for (int i = 0; i < columns.size() && i < record.size(); i++) {
+                    values.put(columns.get(i), record.get(i));
+                }
+
+                result.add(values);
+            }
+
+            return result;
+        }
+    }
+}
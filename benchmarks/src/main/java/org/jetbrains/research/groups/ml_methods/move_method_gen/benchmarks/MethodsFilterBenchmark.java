@@ -0,0 +1,75 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.benchmarks;
+
+import com.intellij.psi.PsiMethod;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.ProjectInfo;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.Filter;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.FilterWithCounter;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Throughput of every methods filter. One operation is a check of all methods of the corpus by
+ * a single filter with caches of method facts, inheritance relations and possible targets
+ * cleared before it, as in a generation run.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class MethodsFilterBenchmark {
+    @Param({
+        "StaticMethodsFilter",
+        "ConstructorsFilter",
+        "AbstractMethodsFilter",
+        "GettersFilter",
+        "SettersFilter",
+        "EmptyMethodsFilter",
+        "ExceptionsThrowersFilter",
+        "SingleMethodFilter",
+        "SimpleDelegationsFilter",
+        "PrivateMethodsCallersFilter",
+        "PrivateFieldAccessorsFilter",
+        "OverridingMethodsFilter",
+        "OverriddenMethodsFilter",
+        "MethodCallWithSuperFilter",
+        "PrivateClassUserFilter",
+        "GenericTypeUserFilter",
+        "NoTargetsMethodsFilter"
+    })
+    public String filterName;
+
+    private Filter<PsiMethod> filter;
+
+    @Setup(Level.Trial)
+    public void setUp(final CorpusState corpus) {
+        for (FilterWithCounter<PsiMethod> candidate : ProjectInfo.createMethodsFilters(
+            corpus.getMethodFacts(),
+            corpus.getInheritanceIndex(),
+            corpus.getRelevantClasses()
+        )) {
+            if (candidate.getName().equals(filterName)) {
+                filter = candidate.getFilter();
+            }
+        }
+
+        if (filter == null) {
+            throw new IllegalArgumentException("Unknown methods filter: " + filterName);
+        }
+    }
+
+    @Benchmark
+    public int filterMethods(final CorpusState corpus) {
+        corpus.clearCaches();
+
+        return CorpusState.inReadAction(() -> {
+            int accepted = 0;
+            for (PsiMethod method : corpus.getMethods()) {
+                if (filter.test(method)) {
+                    accepted++;
+                }
+            }
+
+            return accepted;
+        });
+    }
+}
@@ -0,0 +1,53 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.benchmarks;
+
+import com.intellij.psi.PsiMethod;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.ContextPathCsvSerializer;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.ContextPathDataset;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.PathContextCache;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.PathContextExtractor;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.methods.ConstructorsFilter;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.methods.EmptyMethodsFilter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Extraction of path contexts which {@link ContextPathCsvSerializer} writes for every method.
+ * One operation is extraction of contexts of all methods of the corpus by a single worker with
+ * an empty cache of contexts, so the score times the number of methods is the number of methods
+ * per second. Methods are chosen like in {@link ContextPathDataset}: constructors and empty
+ * methods, including abstract ones, have no contexts and are skipped.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class PathContextExtractionBenchmark {
+    private List<PathContextExtractor.MethodSnapshot> snapshots;
+
+    @Setup(Level.Trial)
+    public void setUp(final CorpusState corpus) {
+        EmptyMethodsFilter emptyMethodsFilter = new EmptyMethodsFilter();
+        ConstructorsFilter constructorsFilter = new ConstructorsFilter();
+
+        snapshots = CorpusState.inReadAction(() -> {
+            List<PathContextExtractor.MethodSnapshot> result = new ArrayList<>();
+            for (PsiMethod method : corpus.getMethods()) {
+                if (!emptyMethodsFilter.test(method) || !constructorsFilter.test(method)) {
+                    continue;
+                }
+
+                result.add(PathContextExtractor.snapshot(method));
+            }
+
+            return result;
+        });
+    }
+
+    @Benchmark
+    public List<String> extractContexts() throws Exception {
+        return new PathContextExtractor(1, PathContextCache.inMemory()).extract(snapshots);
+    }
+}
@@ -0,0 +1,30 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.benchmarks;
+
+import com.intellij.psi.PsiMethod;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.RelevantClasses;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Search of possible targets of all methods of the corpus with
+ * {@link RelevantClasses#possibleTargets}. Possible targets and method facts are computed anew
+ * in every operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class RelevantClassesBenchmark {
+    @Benchmark
+    public void possibleTargets(final CorpusState corpus, final Blackhole blackhole) {
+        corpus.clearCaches();
+
+        CorpusState.inReadAction(() -> {
+            for (PsiMethod method : corpus.getMethods()) {
+                blackhole.consume(corpus.getRelevantClasses().possibleTargets(method));
+            }
+
+            return null;
+        });
+    }
+}
@@ -4,10 +4,9 @@ import com.intellij.psi.PsiField;
 import com.intellij.psi.PsiMethod;
 import com.intellij.psi.PsiModifier;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.analysis.ElementIdentity;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 import static org.jetbrains.research.groups.ml_methods.move_method_gen.utils.MethodUtils.whoseGetter;
 import static org.jetbrains.research.groups.ml_methods.move_method_gen.utils.MethodUtils.whoseSetter;
@@ -18,6 +17,10 @@ public class AccessorsMap {
 
     private final @NotNull Map<PsiField, PsiMethod> fieldToSetter = new HashMap<>();
 
+    private final @NotNull Set<String> fieldsWithGetter = new HashSet<>();
+
+    private final @NotNull Set<String> fieldsWithSetter = new HashSet<>();
+
     public AccessorsMap(final @NotNull List<PsiMethod> methods) {
         methods.forEach(it -> {
             if (!it.hasModifierProperty(PsiModifier.PUBLIC)) {
@@ -27,6 +30,18 @@ public class AccessorsMap {
             whoseGetter(it).ifPresent(field -> fieldToGetter.put(field, it));
             whoseSetter(it).ifPresent(field -> fieldToSetter.put(field, it));
         });
+
+        fieldToGetter.keySet().forEach(it -> fieldsWithGetter.add(ElementIdentity.of(it)));
+        fieldToSetter.keySet().forEach(it -> fieldsWithSetter.add(ElementIdentity.of(it)));
+    }
+
+    /**
+     * Accessors map which knows only identities of fields with accessors. Maps from fields to
+     * accessors are empty then.
+     */
+    public AccessorsMap(final @NotNull Set<String> fieldsWithGetter, final @NotNull Set<String> fieldsWithSetter) {
+        this.fieldsWithGetter.addAll(fieldsWithGetter);
+        this.fieldsWithSetter.addAll(fieldsWithSetter);
     }
 
     @NotNull
@@ -38,4 +53,32 @@ public class AccessorsMap {
     public Map<PsiField, PsiMethod> getFieldToSetter() {
         return fieldToSetter;
     }
+
+    /**
+     * Returns {@link ElementIdentity identities} of fields which have a public getter.
+     */
+    public @NotNull Set<String> getFieldsWithGetter() {
+        return Collections.unmodifiableSet(fieldsWithGetter);
+    }
+
+    /**
+     * Returns {@link ElementIdentity identities} of fields which have a public setter.
+     */
+    public @NotNull Set<String> getFieldsWithSetter() {
+        return Collections.unmodifiableSet(fieldsWithSetter);
+    }
+
+    /**
+     * Checks whether the field with the given {@link ElementIdentity} has a public getter.
+     */
+    public boolean hasGetter(final @NotNull String fieldIdentity) {
+        return fieldsWithGetter.contains(fieldIdentity);
+    }
+
+    /**
+     * Checks whether the field with the given {@link ElementIdentity} has a public setter.
+     */
+    public boolean hasSetter(final @NotNull String fieldIdentity) {
+        return fieldsWithSetter.contains(fieldIdentity);
+    }
 }
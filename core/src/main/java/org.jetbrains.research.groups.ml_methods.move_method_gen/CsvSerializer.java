@@ -4,6 +4,8 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.*;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
@@ -11,9 +13,9 @@ import org.apache.commons.csv.CSVRecord;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.exceptions.InvalidClassException;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.exceptions.InvalidCsvInputException;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.exceptions.InvalidCsvRecordsException;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.exceptions.InvalidFileLocationException;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.exceptions.InvalidMethodException;
-import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.JavaFileUtils;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.MethodUtils;
 
 import java.io.BufferedReader;
@@ -22,10 +24,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 import java.util.stream.Collectors;
 
 import static java.nio.file.StandardOpenOption.CREATE_NEW;
@@ -125,107 +124,135 @@ public class CsvSerializer {
         }
     }
 
+    /**
+     * Reads dataset written by {@link #serialize}. Every file mentioned in the input is refreshed
+     * and loaded once, and elements are looked up right at their recorded offsets. All records
+     * which don't match the project are reported at once by {@link InvalidCsvRecordsException}.
+     */
     public @NotNull Dataset deserialize(
         final @NotNull Project project,
         final @NotNull Path dir
     ) throws Exception {
-        Ref<Exception> exceptionRef = new Ref<>(null);
+        List<CSVRecord> classRecords = readRecords(dir.resolve(CLASSES_FILE_NAME));
+        List<CSVRecord> methodRecords = readRecords(dir.resolve(METHODS_FILE_NAME));
+
+        Set<String> filePaths = new LinkedHashSet<>();
+        classRecords.forEach(it -> filePaths.add(it.get(FILE)));
+        methodRecords.forEach(it -> filePaths.add(it.get(FILE)));
+
+        Map<String, VirtualFile> virtualFiles = new HashMap<>();
+        for (String filePath : filePaths) {
+            VirtualFile virtualFile = project.getBaseDir().findFileByRelativePath(filePath);
+            if (virtualFile != null) {
+                virtualFiles.put(filePath, virtualFile);
+            }
+        }
+
+        VfsUtil.markDirtyAndRefresh(false, false, false, virtualFiles.values().toArray(VirtualFile.EMPTY_ARRAY));
+
+        List<String> problems = new ArrayList<>();
         Dataset dataset = ApplicationManager.getApplication().runReadAction(
             (Computable<Dataset>) () -> {
-                try {
-                    List<PsiClass> classes = new ArrayList<>();
-
-                    try (
-                        BufferedReader reader = Files.newBufferedReader(dir.resolve(CLASSES_FILE_NAME));
-                    ) {
-                        for (CSVRecord record : CSVFormat.RFC4180.withHeader().parse(reader)) {
-                            String filePath = record.get(FILE);
-                            Optional<PsiJavaFile> fileOptional = JavaFileUtils.getFileByPath(project, filePath, true);
-                            if (!fileOptional.isPresent()) {
-                                throw new InvalidFileLocationException(filePath);
-                            }
+                Map<String, PsiJavaFile> files = new HashMap<>();
+                for (Map.Entry<String, VirtualFile> entry : virtualFiles.entrySet()) {
+                    PsiFile file = PsiManager.getInstance(project).findFile(entry.getValue());
+                    if (file instanceof PsiJavaFile) {
+                        files.put(entry.getKey(), (PsiJavaFile) file);
+                    }
+                }
 
-                            PsiJavaFile file = fileOptional.get();
-                            String className = record.get(NAME);
+                for (String filePath : filePaths) {
+                    if (!files.containsKey(filePath)) {
+                        problems.add(new InvalidFileLocationException(filePath).getMessage());
+                    }
+                }
 
-                            String classOffsetString = record.get(OFFSET);
-                            int classOffset;
-                            try {
-                                classOffset = Integer.parseInt(classOffsetString);
-                            } catch (NumberFormatException e) {
-                                throw new InvalidCsvInputException("Failed to parse class offset. Input: " + classOffsetString);
-                            }
+                List<PsiClass> classes = new ArrayList<>();
+                for (CSVRecord record : classRecords) {
+                    PsiJavaFile file = files.get(record.get(FILE));
+                    String className = record.get(NAME);
 
-                            Optional<PsiClass> classOptional = getClassByLocation(file, className, classOffset);
+                    try {
+                        int classOffset = parseInt(record.get(OFFSET), "class offset");
+                        if (file == null) {
+                            continue;
+                        }
 
-                            if (!classOptional.isPresent()) {
-                                throw new InvalidClassException(className, getPathToContainingFile(file).toString(), classOffset);
-                            }
+                        Optional<PsiClass> classOptional = getClassByLocation(file, className, classOffset);
 
-                            classes.add(classOptional.get());
+                        if (!classOptional.isPresent()) {
+                            throw new InvalidClassException(className, getPathToContainingFile(file).toString(), classOffset);
                         }
-                    }
 
-                    List<Dataset.Method> methods = new ArrayList<>();
-                    try (
-                        BufferedReader reader = Files.newBufferedReader(dir.resolve(METHODS_FILE_NAME));
-                    ) {
-                        for (CSVRecord record : CSVFormat.RFC4180.withHeader().parse(reader)) {
-                            String filePath = record.get(FILE);
-                            Optional<PsiJavaFile> fileOptional = JavaFileUtils.getFileByPath(project, filePath, true);
-                            if (!fileOptional.isPresent()) {
-                                throw new InvalidFileLocationException(filePath);
-                            }
+                        classes.add(classOptional.get());
+                    } catch (InvalidCsvInputException e) {
+                        problems.add(e.getMessage());
+                    }
+                }
 
-                            PsiJavaFile file = fileOptional.get();
-                            String methodName = record.get(NAME);
+                List<Dataset.Method> methods = new ArrayList<>();
+                for (CSVRecord record : methodRecords) {
+                    PsiJavaFile file = files.get(record.get(FILE));
+                    String methodName = record.get(NAME);
 
-                            String methodOffsetString = record.get(OFFSET);
-                            int methodOffset;
-                            try {
-                                methodOffset = Integer.parseInt(methodOffsetString);
-                            } catch (NumberFormatException e) {
-                                throw new InvalidCsvInputException("Failed to parse method offset. Input: " + methodOffsetString);
-                            }
+                    try {
+                        int methodOffset = parseInt(record.get(OFFSET), "method offset");
+                        int idOfContainingClass = parseInt(record.get(CONTAINING_CLASS_ID), "id of containing class");
 
-                            Optional<PsiMethod> methodOptional = getMethodByLocation(file, methodName, methodOffset);
+                        String targetIdsString = record.get(TARGET_IDS);
+                        int[] idsOfPossibleTargets = new int[0];
 
-                            if (!methodOptional.isPresent()) {
-                                throw new InvalidMethodException(methodName, getPathToContainingFile(file).toString(), methodOffset);
-                            }
+                        if (!targetIdsString.isEmpty()) {
+                            String[] targetIds = targetIdsString.split(" ");
 
-                            String idOfContainingClassString = record.get(CONTAINING_CLASS_ID);
-                            int idOfContainingClass;
-                            try {
-                                idOfContainingClass = Integer.parseInt(idOfContainingClassString);
-                            } catch (NumberFormatException e) {
-                                throw new InvalidCsvInputException("Failed to parse if of containing class. Input: " + idOfContainingClassString);
+                            idsOfPossibleTargets = new int[targetIds.length];
+                            for (int i = 0; i < targetIds.length; i++) {
+                                idsOfPossibleTargets[i] = parseInt(targetIds[i], "id of target");
                             }
+                        }
 
-                            String targetIdsString = record.get(TARGET_IDS);
-                            int[] idsOfPossibleTargets = {};
+                        if (file == null) {
+                            continue;
+                        }
 
-                            if (!targetIdsString.isEmpty()) {
-                                idsOfPossibleTargets = Arrays.stream(targetIdsString.split(" ")).map(Integer::parseInt).mapToInt(it -> it).toArray();
-                            }
+                        Optional<PsiMethod> methodOptional = getMethodByLocation(file, methodName, methodOffset);
 
-                            methods.add(new Dataset.Method(project, methodOptional.get(), idOfContainingClass, idsOfPossibleTargets));
+                        if (!methodOptional.isPresent()) {
+                            throw new InvalidMethodException(methodName, getPathToContainingFile(file).toString(), methodOffset);
                         }
+
+                        methods.add(new Dataset.Method(project, methodOptional.get(), idOfContainingClass, idsOfPossibleTargets));
+                    } catch (InvalidCsvInputException e) {
+                        problems.add(e.getMessage());
                     }
+                }
 
-                    return new Dataset(project, classes, methods);
-                } catch (IOException | InvalidCsvInputException exception) {
-                    exceptionRef.set(exception);
+                if (!problems.isEmpty()) {
+                    return null;
                 }
 
-                return null;
+                return new Dataset(project, classes, methods);
             }
         );
 
-        if (!exceptionRef.isNull()) {
-            throw exceptionRef.get();
+        if (!problems.isEmpty()) {
+            throw new InvalidCsvRecordsException(problems);
         }
 
         return dataset;
     }
+
+    private static @NotNull List<CSVRecord> readRecords(final @NotNull Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            return CSVFormat.RFC4180.withHeader().parse(reader).getRecords();
+        }
+    }
+
+    private static int parseInt(final @NotNull String input, final @NotNull String description) throws InvalidCsvInputException {
+        try {
+            return Integer.parseInt(input);
+        } catch (NumberFormatException e) {
+            throw new InvalidCsvInputException("Failed to parse " + description + ". Input: " + input);
+        }
+    }
 }
@@ -29,7 +29,7 @@ public class Dataset {
                 .flatMap(it -> relevantClasses.possibleTargets(it).stream()),
             relevantMethods.stream()
                 .map(PsiMember::getContainingClass)
-        ).collect(Collectors.toSet());
+        ).collect(Collectors.toCollection(LinkedHashSet::new));
 
         classes = psiClasses.stream().map(
             it -> SmartPointerManager.getInstance(project)
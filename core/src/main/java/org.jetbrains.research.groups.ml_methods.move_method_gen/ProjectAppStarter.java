@@ -6,24 +6,44 @@ import com.intellij.ide.impl.ProjectUtil;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ApplicationStarter;
 import com.intellij.openapi.application.ex.ApplicationEx;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.projectRoots.JavaSdk;
 import com.intellij.openapi.projectRoots.ProjectJdkTable;
 import com.intellij.openapi.projectRoots.Sdk;
+import com.intellij.openapi.roots.ModuleRootManager;
 import com.intellij.openapi.roots.ModuleRootModificationUtil;
 import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.psi.PsiManager;
+import org.apache.log4j.Appender;
 import org.apache.log4j.FileAppender;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PatternLayout;
+import org.apache.log4j.spi.Filter;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.PhaseTimings;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.PreprocessingUtils;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.ProjectModelStorage;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.SourceFingerprint;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.exceptions.UnsupportedDirectoriesLayoutException;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.jetbrains.research.groups.ml_methods.move_method_gen.utils.PreprocessingUtils.addAllPossibleSourceRoots;
 import static org.jetbrains.research.groups.ml_methods.move_method_gen.utils.PreprocessingUtils.addMainModuleIfLost;
@@ -31,7 +51,32 @@ import static org.jetbrains.research.groups.ml_methods.move_method_gen.utils.Pre
 public abstract class ProjectAppStarter implements ApplicationStarter {
     protected String projectFolderPath = "";
 
-    protected static final @NotNull Logger log = Logger.getLogger(ProjectAppStarter.class);
+    public static final @NotNull Logger log = Logger.getLogger(ProjectAppStarter.class);
+
+    /**
+     * Directory with system and config directories of the IDE which are kept for every project
+     * between runs. Gradle tasks point the IDE to them, here the option only turns on keeping of
+     * the project model in the system directory and skipping of VFS refresh when files are
+     * unchanged.
+     */
+    private static final @NotNull String WARM_START_PROPERTY = "movemethodgen.warmStart.dir";
+
+    /**
+     * Comma separated glob patterns of directories which are excluded from projects, see
+     * {@link PreprocessingUtils#findDirectoriesToExclude}. Nothing is excluded by default, since
+     * exclusion changes datasets compared to the reference ones.
+     */
+    private static final @NotNull String EXCLUDE_PROPERTY = "movemethodgen.exclude";
+
+    /**
+     * Average size of java files in bytes above which a directory is considered generated and is
+     * excluded. Off by default.
+     */
+    private static final @NotNull String GENERATED_FILE_SIZE_PROPERTY = "movemethodgen.exclude.generatedFileSize";
+
+    public static final @NotNull String TIMINGS_FILE_NAME = "timings.json";
+
+    private static Sdk jdk;
 
     @Override
     public void premain(String[] args) {
@@ -46,23 +91,15 @@ public abstract class ProjectAppStarter implements ApplicationStarter {
 
     @Override
     public void main(String[] args) {
-        String logFileName = getOutputDir().resolve("log").toString();
-
-        try {
-            log.addAppender(new FileAppender(new PatternLayout("%d [%p] %m%n"), logFileName));
-        } catch (IOException e) {
-            System.err.println("Failed to open log file: " + logFileName);
-        }
+        attachLog(getOutputDir());
 
         ApplicationEx application = (ApplicationEx) ApplicationManager.getApplication();
 
         try {
+            // The project model of a warm start is saved explicitly, nothing else may be written into the project folder
             application.doNotSave();
-            Project project = ProjectUtil.openOrImport(
-                projectFolderPath,
-                null,
-                false
-            );
+
+            Project project = openProject(projectFolderPath);
 
             if (project == null) {
                 log.error("Unable to open project: " + projectFolderPath);
@@ -70,53 +107,325 @@ public abstract class ProjectAppStarter implements ApplicationStarter {
                 return;
             }
 
-            application.runWriteAction(() ->
-                VirtualFileManager.getInstance()
-                    .refreshWithoutFileWatcher(false)
+            try {
+                waitForIndexing(project);
+
+                run(project);
+
+                if (isWarmStart()) {
+                    saveForWarmStart(project, projectFolderPath);
+                }
+            } finally {
+                reportTimings(project, getOutputDir(), getTimingsFileName());
+
+                if (isWarmStart()) {
+                    ProjectModelStorage.store(Paths.get(projectFolderPath));
+                }
+            }
+        } catch (Throwable e) {
+            logException(e);
+        }
+
+        application.exit(true, true);
+    }
+
+    /**
+     * Opens project located at the given path and prepares it for analysis: adds lost modules
+     * and source roots and sets up JDK.
+     *
+     * @return opened project or {@code null} if project can't be opened.
+     */
+    public static @Nullable Project openProject(final @NotNull String projectFolderPath) throws Exception {
+        ApplicationEx application = (ApplicationEx) ApplicationManager.getApplication();
+
+        // Timings of a project can be obtained only after it is opened
+        long fingerprintStart = System.nanoTime();
+        boolean filesChanged = true;
+        if (isWarmStart()) {
+            Path projectDir = Paths.get(projectFolderPath);
+            String storedFingerprint = SourceFingerprint.takeStored(projectDir);
+            filesChanged = storedFingerprint == null || !storedFingerprint.equals(SourceFingerprint.compute(projectDir));
+
+            ProjectModelStorage.restore(projectDir);
+        }
+
+        long openStart = System.nanoTime();
+        Project project = ProjectUtil.openOrImport(
+            projectFolderPath,
+            null,
+            false
+        );
+
+        if (project == null) {
+            return null;
+        }
+
+        PhaseTimings timings = PhaseTimings.getInstance(project);
+        if (isWarmStart()) {
+            timings.record("source fingerprint", openStart - fingerprintStart);
+        }
+
+        timings.record("project open and import", System.nanoTime() - openStart);
+
+        if (filesChanged) {
+            timings.measure("VFS refresh", () ->
+                application.runWriteAction(() ->
+                    VirtualFileManager.getInstance()
+                        .refreshWithoutFileWatcher(false)
+                )
             );
+        } else {
+            log.info("Files of " + projectFolderPath + " are not changed since the previous run, VFS refresh is skipped");
+        }
 
-            PatchProjectUtil.patchProject(project);
+        timings.measure("project patching", () -> PatchProjectUtil.patchProject(project));
 
-            log.info("Project " + projectFolderPath + " is opened");
+        log.info("Project " + projectFolderPath + " is opened");
 
+        timings.measure("addMainModuleIfLost", () ->
             application.runWriteAction(() -> {
                 try {
                     addMainModuleIfLost(project);
                 } catch (Exception e) {
                     throw new RuntimeException(e);
                 }
-            });
+            })
+        );
 
+        // Excluded directories must not be promoted to source roots
+        timings.measure("directories exclusion", () -> excludeDirectories(project, projectFolderPath));
+
+        timings.measure("addAllPossibleSourceRoots", () ->
             application.runWriteAction(() -> {
                 try {
                     addAllPossibleSourceRoots(project);
                 } catch (UnsupportedDirectoriesLayoutException e) {
                     throw new RuntimeException(e);
                 }
-            });
+            })
+        );
 
-            Sdk jdk = JavaSdk.getInstance().createJdk("java 1.8", System.getenv("JAVA_HOME"), false);
-            ProjectJdkTable.getInstance().addJdk(jdk);
+        timings.measure("SDK setup", () -> setUpJdk(project));
+
+        return project;
+    }
+
+    /**
+     * Waits until indexing started by opening and setting up of the given project is finished.
+     * Waiting for smart mode isn't allowed on the event dispatch thread, so there queued dumb
+     * mode tasks are run right away.
+     */
+    public static void waitForIndexing(final @NotNull Project project) {
+        PhaseTimings.getInstance(project).measure("indexing wait", () -> {
+            DumbService dumbService = DumbService.getInstance(project);
+            if (ApplicationManager.getApplication().isDispatchThread()) {
+                dumbService.completeJustSubmittedTasks();
+            } else {
+                dumbService.waitForSmartMode();
+            }
+        });
+    }
+
+    private static void setUpJdk(final @NotNull Project project) {
+        // Roots are changed only if needed, since every change of roots makes the IDE look for unindexed files
+        Sdk jdk = getJdk();
+        if (!jdk.equals(ProjectRootManager.getInstance(project).getProjectSdk())) {
             ProjectRootManager.getInstance(project).setProjectSdk(jdk);
             NewProjectUtil.applyJdkToProject(project, jdk);
+        }
 
-            Module[] modules = ModuleManager.getInstance(project).getModules();
-            for (Module module : modules) {
+        Module[] modules = ModuleManager.getInstance(project).getModules();
+        for (Module module : modules) {
+            if (!jdk.equals(ModuleRootManager.getInstance(module).getSdk())) {
                 ModuleRootModificationUtil.setModuleSdk(module, jdk);
             }
+        }
+    }
 
-            run(project);
-        } catch (Throwable e) {
-            log.error("Exception occurred: " + e.getMessage() + " [" + e + "]");
-            for (StackTraceElement element : e.getStackTrace()) {
-                log.error(element);
+    /**
+     * Excludes directories chosen by options, e.g. build outputs, vendored and generated code,
+     * from the project, so that they are neither indexed nor analysed. Does nothing unless some
+     * of the options is set.
+     */
+    private static void excludeDirectories(
+        final @NotNull Project project,
+        final @NotNull String projectFolderPath
+    ) throws IOException {
+        List<String> patterns = Arrays.stream(System.getProperty(EXCLUDE_PROPERTY, "").split(","))
+            .map(String::trim)
+            .filter(it -> !it.isEmpty())
+            .collect(Collectors.toList());
+
+        long generatedFileSize = Long.getLong(GENERATED_FILE_SIZE_PROPERTY, 0);
+        if (patterns.isEmpty() && generatedFileSize <= 0) {
+            return;
+        }
+
+        List<VirtualFile> directories = new ArrayList<>();
+        for (Path path : PreprocessingUtils.findDirectoriesToExclude(
+            Paths.get(projectFolderPath),
+            patterns,
+            generatedFileSize
+        )) {
+            VirtualFile directory = LocalFileSystem.getInstance().refreshAndFindFileByIoFile(path.toFile());
+            if (directory != null) {
+                directories.add(directory);
             }
         }
 
-        application.exit(true, true);
+        int excluded = ApplicationManager.getApplication().runWriteAction(
+            (Computable<Integer>) () -> PreprocessingUtils.excludeDirectories(project, directories)
+        );
+
+        log.info("Number of excluded directories: " + excluded);
+    }
+
+    /**
+     * Closes project and releases its caches, so that the next project can be opened in the
+     * same application. Can be called from any thread.
+     */
+    public static void closeProject(final @NotNull Project project) {
+        ApplicationManager.getApplication().invokeAndWait(() -> {
+            PsiManager.getInstance(project).dropPsiCaches();
+            ProjectUtil.closeAndDispose(project);
+        });
+
+        log.info("Project " + project.getBasePath() + " is closed");
+    }
+
+    /**
+     * Writes timings of phases of the given project into the log and into a json file with the
+     * given name in the given directory. Failure to write the file is only logged, so that it
+     * doesn't spoil the run.
+     */
+    public static void reportTimings(
+        final @NotNull Project project,
+        final @NotNull Path outputDir,
+        final @NotNull String fileName
+    ) {
+        PhaseTimings timings = PhaseTimings.getInstance(project);
+        log.info("Timings of phases:" + System.lineSeparator() + timings.getSummary());
+
+        try {
+            timings.serialize(outputDir, fileName);
+        } catch (IOException e) {
+            log.warn("Unable to write timings: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves project model and application settings, including the JDK table, and fingerprint of
+     * project files, so that the next run with the same system and config directories opens the
+     * project without import and VFS refresh. The saved project model is then moved into the
+     * system directory by {@link ProjectModelStorage#store}.
+     */
+    private static void saveForWarmStart(
+        final @NotNull Project project,
+        final @NotNull String projectFolderPath
+    ) throws IOException {
+        ApplicationEx application = (ApplicationEx) ApplicationManager.getApplication();
+        application.invokeAndWait(() -> {
+            FileDocumentManager.getInstance().saveAllDocuments();
+
+            application.doNotSave(false);
+            try {
+                project.save();
+                application.saveSettings();
+            } finally {
+                application.doNotSave(true);
+            }
+        });
+
+        Path projectDir = Paths.get(projectFolderPath);
+        SourceFingerprint.store(projectDir, SourceFingerprint.compute(projectDir));
+
+        log.info("Project " + projectFolderPath + " is saved for warm start");
+    }
+
+    private static boolean isWarmStart() {
+        return System.getProperty(WARM_START_PROPERTY) != null;
+    }
+
+    /**
+     * JDK from {@code JAVA_HOME} is taken from the JDK table if it is already there, which is the
+     * case after a warm start. Otherwise it is created and registered. It is done once per
+     * application and the JDK is shared between all projects.
+     */
+    private static synchronized @NotNull Sdk getJdk() {
+        if (jdk == null) {
+            String javaHome = System.getenv("JAVA_HOME");
+
+            for (Sdk sdk : ProjectJdkTable.getInstance().getSdksOfType(JavaSdk.getInstance())) {
+                if (javaHome != null && sdk.getHomePath() != null && FileUtil.pathsEqual(sdk.getHomePath(), javaHome)) {
+                    jdk = sdk;
+                    break;
+                }
+            }
+        }
+
+        if (jdk == null) {
+            jdk = JavaSdk.getInstance().createJdk("java 1.8", System.getenv("JAVA_HOME"), false);
+            ProjectJdkTable.getInstance().addJdk(jdk);
+        }
+
+        return jdk;
+    }
+
+    /**
+     * Starts writing log into {@code log} file of the given directory.
+     *
+     * @return added appender or {@code null} if log file can't be opened.
+     */
+    public static @Nullable Appender attachLog(final @NotNull Path outputDir) {
+        return attachLog(outputDir, null);
+    }
+
+    /**
+     * Starts writing log events accepted by the given filter into {@code log} file of the given
+     * directory.
+     *
+     * @return added appender or {@code null} if log file can't be opened.
+     */
+    public static @Nullable Appender attachLog(final @NotNull Path outputDir, final @Nullable Filter filter) {
+        String logFileName = outputDir.resolve("log").toString();
+
+        try {
+            Appender appender = new FileAppender(new PatternLayout("%d [%p] %m%n"), logFileName);
+            if (filter != null) {
+                appender.addFilter(filter);
+            }
+
+            log.addAppender(appender);
+
+            return appender;
+        } catch (IOException e) {
+            System.err.println("Failed to open log file: " + logFileName);
+            return null;
+        }
+    }
+
+    public static void detachLog(final @Nullable Appender appender) {
+        if (appender != null) {
+            log.removeAppender(appender);
+            appender.close();
+        }
+    }
+
+    public static void logException(final @NotNull Throwable e) {
+        log.error("Exception occurred: " + e.getMessage() + " [" + e + "]");
+        for (StackTraceElement element : e.getStackTrace()) {
+            log.error(element);
+        }
     }
 
     protected abstract void run(final @NotNull Project project) throws Exception;
 
     protected abstract @NotNull Path getOutputDir();
+
+    /**
+     * Name of the file in the output directory which timings of phases are written into.
+     */
+    protected @NotNull String getTimingsFileName() {
+        return TIMINGS_FILE_NAME;
+    }
 }
@@ -2,26 +2,116 @@ package org.jetbrains.research.groups.ml_methods.move_method_gen;
 
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleUtil;
-import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.*;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.MethodUtils;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.analysis.ElementIdentity;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.analysis.MethodFactsCache;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.analysis.ResolvedTarget;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Classes which can be targets of moved methods. Possible targets of every method are computed
+ * once and then shared by all consumers. Can be used from several threads.
+ */
+public class RelevantClasses {
+    private final @NotNull Map<ClassKey, Module> moduleOfClass = new HashMap<>();
 
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+    private final @NotNull Map<ClassKey, PsiClass> classOfKey = new HashMap<>();
 
-public class RelevantClasses {
-    private final @NotNull Set<PsiClass> classesSet;
+    private final @NotNull Map<PsiMethod, List<ClassKey>> targetsOfMethod = new ConcurrentHashMap<>();
+
+    private final @NotNull Map<String, List<ClassKey>> classesByIdentity = new HashMap<>();
+
+    private final @NotNull MethodFactsCache methodFacts;
 
-    public RelevantClasses(final @NotNull List<PsiClass> classes) {
-        classesSet = new HashSet<>(classes);
+    private final boolean holdsClasses;
+
+    public RelevantClasses(final @NotNull List<PsiClass> classes, final @NotNull MethodFactsCache methodFacts) {
+        this.methodFacts = methodFacts;
+        holdsClasses = true;
+
+        for (PsiClass aClass : classes) {
+            ClassKey key = ClassKey.of(aClass);
+            if (key == null) {
+                continue;
+            }
+
+            classOfKey.put(key, aClass);
+            register(key, ModuleUtil.findModuleForFile(aClass.getContainingFile()));
+        }
+    }
+
+    /**
+     * Relevant classes which are known only by their keys, so that PSI of these classes is not
+     * held. Only keys of possible targets are available then.
+     *
+     * @param modules modules of relevant classes.
+     */
+    public RelevantClasses(final @NotNull Map<ClassKey, Module> modules, final @NotNull MethodFactsCache methodFacts) {
+        this.methodFacts = methodFacts;
+        holdsClasses = false;
+
+        modules.forEach(this::register);
+    }
+
+    private void register(final @NotNull ClassKey key, final @Nullable Module module) {
+        moduleOfClass.put(key, module);
+        classesByIdentity.computeIfAbsent(key.getIdentity(), it -> new ArrayList<>()).add(key);
     }
 
     public @NotNull Set<PsiClass> possibleTargets(final @NotNull PsiMethod method) {
-        Set<PsiClass> targets = new HashSet<>();
+        if (!holdsClasses) {
+            throw new IllegalStateException("Relevant classes are known only by their keys");
+        }
+
+        Set<PsiClass> targets = new LinkedHashSet<>();
+        for (ClassKey key : possibleTargetKeys(method)) {
+            targets.add(classOfKey.get(key));
+        }
+
+        return Collections.unmodifiableSet(targets);
+    }
+
+    public @NotNull List<ClassKey> possibleTargetKeys(final @NotNull PsiMethod method) {
+        List<ClassKey> targets = targetsOfMethod.get(method);
+        if (targets == null) {
+            targets = Collections.unmodifiableList(new ArrayList<>(computePossibleTargets(method)));
+
+            List<ClassKey> previous = targetsOfMethod.putIfAbsent(method, targets);
+            if (previous != null) {
+                targets = previous;
+            }
+        }
+
+        return targets;
+    }
+
+    /**
+     * Forgets possible targets of the given method, so that they are computed anew on the next
+     * request.
+     */
+    public void forget(final @NotNull PsiMethod method) {
+        targetsOfMethod.remove(method);
+    }
+
+    /**
+     * Forgets possible targets computed so far, so that methods they were computed for can be
+     * garbage collected.
+     */
+    public void clearCache() {
+        targetsOfMethod.clear();
+    }
+
+    private @NotNull Set<ClassKey> computePossibleTargets(final @NotNull PsiMethod method) {
+        Set<ClassKey> targets = new LinkedHashSet<>();
 
         Module methodModule = ModuleUtil.findModuleForFile(method.getContainingFile());
+        PsiClass containingClass = method.getContainingClass();
+        ClassKey containingKey = containingClass == null ? null : ClassKey.of(containingClass);
 
         for (PsiParameter parameter : method.getParameterList().getParameters()) {
             PsiType type = parameter.getType();
@@ -29,14 +119,13 @@ public class RelevantClasses {
                 continue;
             }
 
-            PsiClassType classType = (PsiClassType) type;
-            PsiClass actualClass = classType.resolve();
+            ClassKey actualClass = resolveClass(parameter, (PsiClassType) type);
 
             if (
                 actualClass != null &&
-                classesSet.contains(actualClass) &&
-                !actualClass.equals(method.getContainingClass()) &&
-                methodModule.equals(ModuleUtil.findModuleForFile(actualClass.getContainingFile())) &&
+                moduleOfClass.containsKey(actualClass) &&
+                !actualClass.equals(containingKey) &&
+                methodModule.equals(moduleOfClass.get(actualClass)) &&
                 isCandidate(method, parameter)
             ) {
                 targets.add(actualClass);
@@ -47,28 +136,90 @@ public class RelevantClasses {
     }
 
     private boolean isCandidate(final @NotNull PsiMethod method, final @NotNull PsiParameter parameter) {
-        Ref<Boolean> result = new Ref<>(true);
+        return !methodFacts.get(method).getWrittenParameters().contains(ElementIdentity.of(parameter));
+    }
 
-        new JavaRecursiveElementVisitor() {
-            @Override
-            public void visitReferenceExpression(
-                final @NotNull PsiReferenceExpression expression
-            ) {
-                super.visitReferenceExpression(expression);
+    /**
+     * Resolves type of the parameter through resolver of method facts. A class restored from the
+     * resolver by its identity is looked up among relevant classes. If it is not unique among
+     * them, type is resolved through PSI.
+     */
+    private @Nullable ClassKey resolveClass(final @NotNull PsiParameter parameter, final @NotNull PsiClassType type) {
+        PsiTypeElement typeElement = parameter.getTypeElement();
+        PsiJavaCodeReferenceElement reference =
+            typeElement == null ? null : typeElement.getInnermostComponentReferenceElement();
+
+        if (reference == null) {
+            return ClassKey.of(type.resolve());
+        }
+
+        ResolvedTarget target = methodFacts.getResolver().resolve(reference);
+        if (target.getElement() instanceof PsiClass) {
+            return ClassKey.of((PsiClass) target.getElement());
+        }
+
+        if (target.getKind() != ResolvedTarget.Kind.CLASS) {
+            return null;
+        }
+
+        List<ClassKey> candidates = classesByIdentity.getOrDefault(target.getIdentity(), Collections.emptyList());
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+
+        return ClassKey.of(type.resolve());
+    }
 
-                if (!MethodUtils.isInLeftSideOfAssignment(expression)) {
-                    return;
-                }
+    /**
+     * Lightweight anchor of a class which doesn't hold its PSI: {@link ElementIdentity} of the
+     * class and the file it is declared in.
+     */
+    public static final class ClassKey {
+        private final @NotNull String identity;
 
-                JavaResolveResult resolveResult = expression.advancedResolve(false);
-                PsiElement referencedElement = resolveResult.getElement();
+        private final @NotNull VirtualFile file;
 
-                if (referencedElement == parameter) {
-                    result.set(false);
-                }
+        public ClassKey(final @NotNull String identity, final @NotNull VirtualFile file) {
+            this.identity = identity;
+            this.file = file;
+        }
+
+        public static @Nullable ClassKey of(final @Nullable PsiClass aClass) {
+            PsiFile containingFile = aClass == null ? null : aClass.getContainingFile();
+            VirtualFile file = containingFile == null ? null : containingFile.getVirtualFile();
+
+            return file == null ? null : new ClassKey(ElementIdentity.of(aClass), file);
+        }
+
+        public @NotNull String getIdentity() {
+            return identity;
+        }
+
+        public @NotNull VirtualFile getFile() {
+            return file;
+        }
+
+        @Override
+        public boolean equals(final @Nullable Object other) {
+            if (this == other) {
+                return true;
+            }
+
+            if (other == null || getClass() != other.getClass()) {
+                return false;
             }
-        }.visitElement(method);
 
-        return result.get();
+            ClassKey key = (ClassKey) other;
+            return identity.equals(key.identity) && file.equals(key.file);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(identity, file);
+        }
     }
 }
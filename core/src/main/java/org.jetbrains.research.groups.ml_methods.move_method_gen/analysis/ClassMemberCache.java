@@ -0,0 +1,210 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.analysis;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.psi.*;
+import com.intellij.psi.util.InheritanceUtil;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.PsiUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.AccessorsMap;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches members of classes, including inherited ones, and accessors among them. Cached data of
+ * a class is dropped when the class or one of its supertypes is modified. Changes inside of
+ * method bodies keep members, they drop only accessors and only if the changed method may be or
+ * may have been an accessor. Every project has its own cache which lives as long as the project.
+ */
+public class ClassMemberCache {
+    private static final @NotNull Map<Project, ClassMemberCache> INSTANCES = new ConcurrentHashMap<>();
+
+    private final @NotNull Map<PsiClass, Set<PsiMethod>> allMethods = new ConcurrentHashMap<>();
+
+    private final @NotNull Map<PsiClass, Set<String>> allMethodNames = new ConcurrentHashMap<>();
+
+    private final @NotNull Map<PsiClass, AccessorsMap> accessors = new ConcurrentHashMap<>();
+
+    /**
+     * Cached classes by their supertypes, so that classes which inherit members of a changed
+     * class are found without checking every cached class.
+     */
+    private final @NotNull Map<PsiClass, Set<PsiClass>> inheritors = new ConcurrentHashMap<>();
+
+    /**
+     * Accessors from all accessors maps computed since the last change of everything. Stale
+     * methods are not removed, they only make some changes drop accessors maps needlessly.
+     */
+    private final @NotNull Set<PsiMethod> accessorMethods = ConcurrentHashMap.newKeySet();
+
+    private ClassMemberCache() {
+    }
+
+    public static @NotNull ClassMemberCache getInstance(final @NotNull Project project) {
+        return INSTANCES.computeIfAbsent(project, it -> {
+            ClassMemberCache cache = new ClassMemberCache();
+
+            PsiManager.getInstance(project).addPsiTreeChangeListener(cache.new InvalidatingListener(), project);
+            Disposer.register(project, () -> INSTANCES.remove(project));
+
+            return cache;
+        });
+    }
+
+    /**
+     * Returns all methods of the given class, including inherited ones.
+     */
+    public @NotNull Set<PsiMethod> getAllMethods(final @NotNull PsiClass aClass) {
+        return allMethods.computeIfAbsent(aClass, it -> {
+            for (PsiClass superClass : InheritanceUtil.getSuperClasses(it)) {
+                inheritors.computeIfAbsent(superClass, key -> ConcurrentHashMap.newKeySet()).add(it);
+            }
+
+            return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(it.getAllMethods())));
+        });
+    }
+
+    public boolean hasMethodWithName(final @NotNull PsiClass aClass, final @NotNull String name) {
+        return allMethodNames.computeIfAbsent(aClass, it -> {
+            Set<String> names = new HashSet<>();
+            for (PsiMethod method : getAllMethods(it)) {
+                names.add(method.getName());
+            }
+
+            return names;
+        }).contains(name);
+    }
+
+    /**
+     * Returns accessors among all methods of the given class, including inherited ones.
+     */
+    public @NotNull AccessorsMap getAccessorsMap(final @NotNull PsiClass aClass) {
+        return accessors.computeIfAbsent(aClass, it -> {
+            AccessorsMap accessorsMap = new AccessorsMap(new ArrayList<>(getAllMethods(it)));
+            accessorMethods.addAll(accessorsMap.getFieldToGetter().values());
+            accessorMethods.addAll(accessorsMap.getFieldToSetter().values());
+
+            return accessorsMap;
+        });
+    }
+
+    private void invalidate(final @NotNull PsiClass changedClass) {
+        if (!changedClass.isValid()) {
+            invalidateAll();
+            return;
+        }
+
+        invalidateClass(changedClass);
+        for (PsiClass aClass : inheritors.getOrDefault(changedClass, Collections.emptySet())) {
+            invalidateClass(aClass);
+        }
+    }
+
+    /**
+     * Drops accessors maps after a change inside of the body of the given method. Accessors have
+     * bodies of a single statement, so a change which leaves a body of other size is relevant
+     * only if the method was an accessor before it.
+     */
+    private void invalidateAccessors(final @NotNull PsiMethod changedMethod) {
+        PsiClass changedClass = changedMethod.getContainingClass();
+        PsiCodeBlock body = changedMethod.getBody();
+
+        if (
+            changedClass == null ||
+            !changedMethod.hasModifierProperty(PsiModifier.PUBLIC) ||
+            body != null && body.getStatements().length != 1 && !accessorMethods.contains(changedMethod)
+        ) {
+            return;
+        }
+
+        accessors.remove(changedClass);
+        for (PsiClass aClass : inheritors.getOrDefault(changedClass, Collections.emptySet())) {
+            accessors.remove(aClass);
+        }
+    }
+
+    private void invalidateClass(final @NotNull PsiClass aClass) {
+        allMethods.remove(aClass);
+        allMethodNames.remove(aClass);
+        accessors.remove(aClass);
+    }
+
+    private void invalidateAll() {
+        allMethods.clear();
+        allMethodNames.clear();
+        accessors.clear();
+        inheritors.clear();
+        accessorMethods.clear();
+    }
+
+    private class InvalidatingListener extends PsiTreeChangeAdapter {
+        @Override
+        public void childAdded(final @NotNull PsiTreeChangeEvent event) {
+            changed(event);
+        }
+
+        @Override
+        public void childRemoved(final @NotNull PsiTreeChangeEvent event) {
+            changed(event);
+        }
+
+        @Override
+        public void childReplaced(final @NotNull PsiTreeChangeEvent event) {
+            changed(event);
+        }
+
+        @Override
+        public void childMoved(final @NotNull PsiTreeChangeEvent event) {
+            changed(event);
+        }
+
+        @Override
+        public void childrenChanged(final @NotNull PsiTreeChangeEvent event) {
+            changed(event);
+        }
+
+        @Override
+        public void propertyChanged(final @NotNull PsiTreeChangeEvent event) {
+            invalidateAll();
+        }
+
+        private void changed(final @NotNull PsiTreeChangeEvent event) {
+            PsiElement parent = event.getParent();
+            if (parent == null) {
+                invalidateAll();
+                return;
+            }
+
+            changed(parent);
+        }
+
+        private void changed(final @NotNull PsiElement element) {
+            PsiClass changedClass = PsiTreeUtil.getParentOfType(element, PsiClass.class, false);
+            if (changedClass == null) {
+                invalidateAll();
+                return;
+            }
+
+            PsiCodeBlock codeBlock = PsiTreeUtil.getParentOfType(element, PsiCodeBlock.class, false, PsiClass.class);
+            if (codeBlock != null) {
+                PsiMethod changedMethod = PsiTreeUtil.getParentOfType(codeBlock, PsiMethod.class, true, PsiClass.class);
+                if (changedMethod != null) {
+                    invalidateAccessors(changedMethod);
+                }
+
+                // members of classes don't depend on code inside of methods and initializers
+                return;
+            }
+
+            invalidate(changedClass);
+
+            // a change inside of an anonymous or a local class is a change of the enclosing code too
+            PsiElement context = changedClass.getParent();
+            if ((changedClass instanceof PsiAnonymousClass || PsiUtil.isLocalClass(changedClass)) && context != null) {
+                changed(context);
+            }
+        }
+    }
+}
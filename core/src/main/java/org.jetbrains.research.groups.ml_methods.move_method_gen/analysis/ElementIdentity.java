@@ -0,0 +1,98 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.analysis;
+
+import com.intellij.psi.*;
+import com.intellij.psi.util.PsiTreeUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Textual identities of resolve targets which stay the same across runs of the generator as
+ * long as the target itself is not changed. Identities are built from names and signatures only,
+ * so they can be computed from stubs without loading ASTs of files with targets. Anonymous classes
+ * have no names and are told apart by their offsets inside of the enclosing member instead.
+ * Parameters are qualified by the method, lambda or statement which declares them, so a parameter
+ * of a method of a local or anonymous class never gets identity of a parameter of the enclosing
+ * method with the same name.
+ */
+public final class ElementIdentity {
+    private ElementIdentity() {
+    }
+
+    public static @NotNull String of(final @Nullable PsiElement element) {
+        if (element instanceof PsiTypeParameter) {
+            PsiTypeParameter typeParameter = (PsiTypeParameter) element;
+            return of(typeParameter.getOwner()) + "<" + typeParameter.getName();
+        }
+
+        if (element instanceof PsiClass) {
+            PsiClass aClass = (PsiClass) element;
+
+            String qualifiedName = aClass.getQualifiedName();
+            if (qualifiedName != null) {
+                return qualifiedName;
+            }
+
+            PsiMember parent = PsiTreeUtil.getParentOfType(aClass, PsiMember.class);
+            if (aClass instanceof PsiAnonymousClass) {
+                int offset = aClass.getTextRange().getStartOffset();
+                if (parent != null) {
+                    offset -= parent.getTextRange().getStartOffset();
+                }
+
+                return of(parent) + "$anonymous@" + offset;
+            }
+
+            return of(parent) + "$" + aClass.getName();
+        }
+
+        if (element instanceof PsiMethod) {
+            PsiMethod method = (PsiMethod) element;
+
+            return of(method.getContainingClass()) + "." + method.getName() + "(" +
+                Arrays.stream(method.getParameterList().getParameters())
+                    .map(it -> it.getType().getCanonicalText())
+                    .collect(Collectors.joining(",")) +
+                ")";
+        }
+
+        if (element instanceof PsiField) {
+            PsiField field = (PsiField) element;
+            return of(field.getContainingClass()) + "#" + field.getName();
+        }
+
+        if (element instanceof PsiParameter) {
+            PsiParameter parameter = (PsiParameter) element;
+            return of(parameter.getDeclarationScope()) + "@" + parameter.getName();
+        }
+
+        if (element instanceof PsiNamedElement) {
+            String name = ((PsiNamedElement) element).getName();
+            return name == null ? "" : name;
+        }
+
+        return "";
+    }
+
+    /**
+     * Identity of the class or method which declares the given element. Empty if the element is
+     * not a member or a type parameter.
+     */
+    public static @NotNull String ownerOf(final @Nullable PsiElement element) {
+        if (element instanceof PsiTypeParameter) {
+            return of(((PsiTypeParameter) element).getOwner());
+        }
+
+        if (element instanceof PsiClass) {
+            return "";
+        }
+
+        if (element instanceof PsiMember) {
+            return of(((PsiMember) element).getContainingClass());
+        }
+
+        return "";
+    }
+}
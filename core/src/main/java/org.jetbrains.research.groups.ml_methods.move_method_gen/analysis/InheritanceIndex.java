@@ -0,0 +1,184 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.analysis;
+
+import com.intellij.psi.*;
+import com.intellij.psi.impl.source.PsiFileImpl;
+import com.intellij.psi.stubs.StubElement;
+import com.intellij.psi.stubs.StubTree;
+import com.intellij.psi.util.MethodSignatureUtil;
+import com.intellij.psi.util.PsiUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inheritance relations between all classes of the given files, including anonymous and local
+ * ones. Index is built once and replaces hierarchy searches which are performed for every method
+ * or class otherwise. Classes are taken from stub trees of files, which hold anonymous and local
+ * classes too, so building the index parses only files whose syntax trees are loaded anyway.
+ * Queries must be made inside of a read action. Can be used from several threads.
+ */
+public class InheritanceIndex {
+    private final @NotNull Map<PsiClass, List<PsiClass>> directSubclasses = new HashMap<>();
+
+    private final @NotNull Map<String, List<PsiMethod>> methodsByName = new HashMap<>();
+
+    private final @NotNull Map<PsiClass, Set<PsiClass>> inheritors = new ConcurrentHashMap<>();
+
+    private final @NotNull Map<PsiClass, Set<String>> inheritedMethodNames = new ConcurrentHashMap<>();
+
+    private final @NotNull Map<PsiMethod, List<PsiMethod>> overriders = new ConcurrentHashMap<>();
+
+    public InheritanceIndex(final @NotNull List<PsiJavaFile> files) {
+        for (PsiJavaFile file : files) {
+            for (PsiClass aClass : classesOf(file)) {
+                if (aClass instanceof PsiTypeParameter) {
+                    continue;
+                }
+
+                for (PsiClass superClass : aClass.getSupers()) {
+                    directSubclasses.computeIfAbsent(superClass, it -> new ArrayList<>()).add(aClass);
+                }
+
+                for (PsiMethod method : aClass.getMethods()) {
+                    methodsByName.computeIfAbsent(method.getName(), it -> new ArrayList<>()).add(method);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns all classes which extend or implement the given one directly or indirectly.
+     */
+    public @NotNull Set<PsiClass> getInheritors(final @NotNull PsiClass aClass) {
+        Set<PsiClass> result = inheritors.get(aClass);
+        if (result == null) {
+            result = new HashSet<>();
+
+            Deque<PsiClass> queue = new ArrayDeque<>();
+            queue.add(aClass);
+            while (!queue.isEmpty()) {
+                for (PsiClass subclass : directSubclasses.getOrDefault(queue.poll(), Collections.emptyList())) {
+                    if (result.add(subclass)) {
+                        queue.add(subclass);
+                    }
+                }
+            }
+
+            result = Collections.unmodifiableSet(result);
+
+            Set<PsiClass> previous = inheritors.putIfAbsent(aClass, result);
+            if (previous != null) {
+                result = previous;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns methods which override the given one. Same as {@code OverridingMethodsSearch}
+     * restricted to the indexed files.
+     */
+    public @NotNull List<PsiMethod> getOverriders(final @NotNull PsiMethod method) {
+        List<PsiMethod> result = overriders.get(method);
+        if (result == null) {
+            result = new ArrayList<>();
+
+            PsiClass containingClass = method.getContainingClass();
+            if (containingClass != null && PsiUtil.canBeOverridden(method)) {
+                Set<PsiClass> classInheritors = getInheritors(containingClass);
+
+                for (PsiMethod candidate : methodsByName.getOrDefault(method.getName(), Collections.emptyList())) {
+                    if (
+                        classInheritors.contains(candidate.getContainingClass()) &&
+                        MethodSignatureUtil.isSuperMethod(method, candidate)
+                    ) {
+                        result.add(candidate);
+                    }
+                }
+            }
+
+            result = Collections.unmodifiableList(result);
+
+            List<PsiMethod> previous = overriders.putIfAbsent(method, result);
+            if (previous != null) {
+                result = previous;
+            }
+        }
+
+        return result;
+    }
+
+    public boolean isOverridden(final @NotNull PsiMethod method) {
+        return !getOverriders(method).isEmpty();
+    }
+
+    /**
+     * Checks whether the given method overrides or implements some other method. Full super
+     * methods search is performed only if some supertype of containing class has a method with
+     * the same name.
+     */
+    public boolean hasSuperMethods(final @NotNull PsiMethod method) {
+        PsiClass containingClass = method.getContainingClass();
+        if (containingClass == null) {
+            return method.findSuperMethods().length != 0;
+        }
+
+        Set<String> names = inheritedMethodNames.get(containingClass);
+        if (names == null) {
+            names = new HashSet<>();
+            for (PsiClass superClass : containingClass.getSupers()) {
+                for (PsiMethod superMethod : superClass.getAllMethods()) {
+                    names.add(superMethod.getName());
+                }
+            }
+
+            Set<String> previous = inheritedMethodNames.putIfAbsent(containingClass, names);
+            if (previous != null) {
+                names = previous;
+            }
+        }
+
+        return names.contains(method.getName()) && method.findSuperMethods().length != 0;
+    }
+
+    /**
+     * Forgets inheritors and overriders found so far. Relations between classes stay indexed.
+     */
+    public void clearCache() {
+        inheritors.clear();
+        inheritedMethodNames.clear();
+        overriders.clear();
+    }
+
+    /**
+     * Returns all classes declared in the given file. They are taken from the stub tree of the
+     * file if its syntax tree isn't loaded, so that the file isn't parsed.
+     */
+    private static @NotNull List<PsiClass> classesOf(final @NotNull PsiJavaFile file) {
+        List<PsiClass> classes = new ArrayList<>();
+
+        StubTree stubTree = file instanceof PsiFileImpl ? ((PsiFileImpl) file).getStubTree() : null;
+        if (stubTree != null) {
+            for (StubElement<?> stub : stubTree.getPlainList()) {
+                PsiElement element = stub.getPsi();
+                if (element instanceof PsiClass) {
+                    classes.add((PsiClass) element);
+                }
+            }
+
+            return classes;
+        }
+
+        file.accept(new JavaRecursiveElementWalkingVisitor() {
+            @Override
+            public void visitClass(final @NotNull PsiClass aClass) {
+                super.visitClass(aClass);
+                classes.add(aClass);
+            }
+        });
+
+        return classes;
+    }
+}
@@ -0,0 +1,293 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.analysis;
+
+import com.intellij.psi.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.AccessorsMap;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.LatencyHistogram;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.MethodUtils;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.StoppableJavaElementVisitor;
+
+import java.util.*;
+
+/**
+ * Facts about references inside of a method body which are needed by methods filters and by
+ * search of possible targets.
+ *
+ * Facts are collected lazily. When some disqualifier is asked for and it is not known yet, the
+ * method is walked in search of all the disqualifiers which are still unknown, and the walk is
+ * cut short as soon as the asked one is found. Other disqualifiers found on the way are
+ * remembered, and if the walk reaches the end, absence of every disqualifier it looked for is
+ * known. Therefore {@link #has} is exact for every disqualifier regardless of the order in
+ * which they are asked for, and references are resolved only while some answer depends on them.
+ * Every reference is resolved at most once however many walks are made. Written parameters are
+ * needed only for methods which passed all the filters, so they are collected by a separate
+ * walk on the first request. Durations of all walks are recorded into a histogram.
+ *
+ * References are resolved through a {@link ReferenceResolver}, so facts can be gathered from
+ * targets remembered by a previous run without resolving anything. Instances can be used from
+ * several threads.
+ */
+public class MethodFacts {
+    public enum Disqualifier {
+        /**
+         * Method calls a method which is not public.
+         */
+        NON_PUBLIC_METHOD_CALL,
+
+        /**
+         * Method references a non-public field of some other class or a non-public field of its
+         * own class which has no public accessor for this kind of access.
+         */
+        NON_PUBLIC_FIELD_ACCESS,
+
+        /**
+         * Method calls some method with {@code super} qualifier.
+         */
+        SUPER_METHOD_CALL,
+
+        /**
+         * Method references a private class.
+         */
+        PRIVATE_CLASS_USAGE,
+
+        /**
+         * Method references a type parameter which is not declared by the method itself.
+         */
+        OUTER_TYPE_PARAMETER_USAGE
+    }
+
+    private final @NotNull PsiMethod method;
+
+    private final @NotNull AccessorsMap accessorsMap;
+
+    private final @NotNull ReferenceResolver resolver;
+
+    private final @NotNull LatencyHistogram walkLatencies;
+
+    /**
+     * Disqualifiers which the method is known to have.
+     */
+    private final @NotNull EnumSet<Disqualifier> found = EnumSet.noneOf(Disqualifier.class);
+
+    /**
+     * Disqualifiers for which it is known whether the method has them.
+     */
+    private final @NotNull EnumSet<Disqualifier> decided = EnumSet.noneOf(Disqualifier.class);
+
+    private final @NotNull Map<PsiJavaCodeReferenceElement, ResolvedTarget> resolved = new HashMap<>();
+
+    private @Nullable Set<String> writtenParameters;
+
+    private MethodFacts(
+        final @NotNull PsiMethod method,
+        final @NotNull AccessorsMap accessorsMap,
+        final @NotNull ReferenceResolver resolver,
+        final @NotNull LatencyHistogram walkLatencies
+    ) {
+        this.method = method;
+        this.accessorsMap = accessorsMap;
+        this.resolver = resolver;
+        this.walkLatencies = walkLatencies;
+    }
+
+    /**
+     * Creates facts of the given method. Nothing is walked or resolved until facts are asked for.
+     *
+     * @param walkLatencies histogram which durations of walks of the method are recorded into.
+     */
+    public static @NotNull MethodFacts collect(
+        final @NotNull PsiMethod method,
+        final @NotNull AccessorsMap accessorsMap,
+        final @NotNull ReferenceResolver resolver,
+        final @NotNull LatencyHistogram walkLatencies
+    ) {
+        return new MethodFacts(method, accessorsMap, resolver, walkLatencies);
+    }
+
+    public synchronized boolean has(final @NotNull Disqualifier disqualifier) {
+        if (!decided.contains(disqualifier)) {
+            EnumSet<Disqualifier> lookedFor = EnumSet.complementOf(decided);
+
+            long start = System.nanoTime();
+            boolean completed = new Collector(this, lookedFor, disqualifier).walk(method);
+            walkLatencies.record(System.nanoTime() - start);
+
+            if (completed) {
+                decided.addAll(lookedFor);
+            }
+
+            releaseResolvedTargets();
+        }
+
+        return found.contains(disqualifier);
+    }
+
+    /**
+     * {@link ElementIdentity Identities} of parameters which are assigned inside of the method.
+     * Besides parameters of the method itself they include parameters of lambdas and of methods
+     * of local and anonymous classes declared inside of it.
+     */
+    public synchronized @NotNull Set<String> getWrittenParameters() {
+        if (writtenParameters == null) {
+            Set<String> parameters = new HashSet<>();
+
+            long start = System.nanoTime();
+            method.accept(new JavaRecursiveElementWalkingVisitor() {
+                @Override
+                public void visitReferenceExpression(final @NotNull PsiReferenceExpression expression) {
+                    super.visitReferenceExpression(expression);
+
+                    if (!MethodUtils.isInLeftSideOfAssignment(expression)) {
+                        return;
+                    }
+
+                    ResolvedTarget target = resolve(expression);
+                    if (target.getKind() == ResolvedTarget.Kind.PARAMETER) {
+                        parameters.add(target.getIdentity());
+                    }
+                }
+            });
+            walkLatencies.record(System.nanoTime() - start);
+
+            writtenParameters = parameters;
+            releaseResolvedTargets();
+        }
+
+        return Collections.unmodifiableSet(writtenParameters);
+    }
+
+    private @NotNull ResolvedTarget resolve(final @NotNull PsiJavaCodeReferenceElement reference) {
+        return resolved.computeIfAbsent(reference, resolver::resolve);
+    }
+
+    /**
+     * Resolved targets are kept only while some later walk can need them.
+     */
+    private void releaseResolvedTargets() {
+        if (writtenParameters != null && decided.size() == Disqualifier.values().length) {
+            resolved.clear();
+        }
+    }
+
+    /**
+     * Walks the method in search of the given disqualifiers and stops as soon as the wanted one
+     * is found.
+     */
+    private static class Collector extends StoppableJavaElementVisitor {
+        private final @NotNull MethodFacts facts;
+
+        private final @NotNull EnumSet<Disqualifier> lookedFor;
+
+        private final @NotNull Disqualifier wanted;
+
+        private final @NotNull String methodIdentity;
+
+        private final @NotNull String classIdentity;
+
+        private Collector(
+            final @NotNull MethodFacts facts,
+            final @NotNull EnumSet<Disqualifier> lookedFor,
+            final @NotNull Disqualifier wanted
+        ) {
+            this.facts = facts;
+            this.lookedFor = EnumSet.copyOf(lookedFor);
+            this.wanted = wanted;
+            this.methodIdentity = ElementIdentity.of(facts.method);
+            this.classIdentity = ElementIdentity.of(facts.method.getContainingClass());
+        }
+
+        @Override
+        public void visitElement(final @NotNull PsiElement element) {
+            super.visitElement(element);
+
+            if (
+                !(element instanceof PsiJavaCodeReferenceElement) ||
+                !isLookedFor(Disqualifier.PRIVATE_CLASS_USAGE) && !isLookedFor(Disqualifier.OUTER_TYPE_PARAMETER_USAGE)
+            ) {
+                return;
+            }
+
+            ResolvedTarget target = facts.resolve((PsiJavaCodeReferenceElement) element);
+
+            if (target.getKind() == ResolvedTarget.Kind.CLASS && target.isPrivate()) {
+                found(Disqualifier.PRIVATE_CLASS_USAGE);
+            }
+
+            if (
+                target.getKind() == ResolvedTarget.Kind.TYPE_PARAMETER &&
+                !methodIdentity.equals(target.getOwner())
+            ) {
+                found(Disqualifier.OUTER_TYPE_PARAMETER_USAGE);
+            }
+        }
+
+        @Override
+        public void visitReferenceExpression(final @NotNull PsiReferenceExpression expression) {
+            super.visitReferenceExpression(expression);
+
+            if (!isLookedFor(Disqualifier.NON_PUBLIC_FIELD_ACCESS)) {
+                return;
+            }
+
+            ResolvedTarget target = facts.resolve(expression);
+            if (target.getKind() != ResolvedTarget.Kind.FIELD || target.isPublic()) {
+                return;
+            }
+
+            boolean isAssigned = MethodUtils.isInLeftSideOfAssignment(expression);
+
+            if (!classIdentity.equals(target.getOwner())) {
+                found(Disqualifier.NON_PUBLIC_FIELD_ACCESS);
+            } else if (isAssigned) {
+                if (!facts.accessorsMap.hasSetter(target.getIdentity())) {
+                    found(Disqualifier.NON_PUBLIC_FIELD_ACCESS);
+                }
+            } else {
+                if (!facts.accessorsMap.hasGetter(target.getIdentity())) {
+                    found(Disqualifier.NON_PUBLIC_FIELD_ACCESS);
+                }
+            }
+        }
+
+        @Override
+        public void visitMethodCallExpression(final @NotNull PsiMethodCallExpression expression) {
+            super.visitMethodCallExpression(expression);
+
+            PsiReferenceExpression methodExpression = expression.getMethodExpression();
+
+            if (
+                isLookedFor(Disqualifier.SUPER_METHOD_CALL) &&
+                methodExpression.getQualifierExpression() instanceof PsiSuperExpression
+            ) {
+                found(Disqualifier.SUPER_METHOD_CALL);
+            }
+
+            if (!isLookedFor(Disqualifier.NON_PUBLIC_METHOD_CALL)) {
+                return;
+            }
+
+            ResolvedTarget calledMethod = facts.resolve(methodExpression);
+            if (calledMethod.getKind() == ResolvedTarget.Kind.METHOD && !calledMethod.isPublic()) {
+                found(Disqualifier.NON_PUBLIC_METHOD_CALL);
+            }
+        }
+
+        private boolean isLookedFor(final @NotNull Disqualifier disqualifier) {
+            return lookedFor.contains(disqualifier);
+        }
+
+        private void found(final @NotNull Disqualifier disqualifier) {
+            if (!lookedFor.remove(disqualifier)) {
+                return;
+            }
+
+            facts.found.add(disqualifier);
+            facts.decided.add(disqualifier);
+
+            if (disqualifier == wanted) {
+                stop();
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.analysis;
+
+import com.intellij.psi.PsiMethod;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.AccessorsMap;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.LatencyHistogram;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps {@link MethodFacts} of every method, so that each fact is computed at most once and
+ * shared between all the consumers. Can be used from several threads.
+ */
+public class MethodFactsCache {
+    private final @NotNull AccessorsMap accessorsMap;
+
+    private final @NotNull ReferenceResolver resolver;
+
+    private final @NotNull Map<PsiMethod, MethodFacts> facts = new ConcurrentHashMap<>();
+
+    private final @NotNull LatencyHistogram walkLatencies = new LatencyHistogram();
+
+    public MethodFactsCache(final @NotNull AccessorsMap accessorsMap, final @NotNull ReferenceResolver resolver) {
+        this.accessorsMap = accessorsMap;
+        this.resolver = resolver;
+    }
+
+    public @NotNull ReferenceResolver getResolver() {
+        return resolver;
+    }
+
+    public @NotNull MethodFacts get(final @NotNull PsiMethod method) {
+        return facts.computeIfAbsent(method, it -> MethodFacts.collect(it, accessorsMap, resolver, walkLatencies));
+    }
+
+    /**
+     * Durations of all walks of method bodies made for facts of this cache. Walks are made by
+     * filters and search of targets asking for facts, so they are a part of those phases too.
+     */
+    public @NotNull LatencyHistogram getWalkLatencies() {
+        return walkLatencies;
+    }
+
+    /**
+     * Forgets facts of the given method, so that they are collected anew on the next request.
+     */
+    public void forget(final @NotNull PsiMethod method) {
+        facts.remove(method);
+    }
+
+    /**
+     * Forgets facts collected so far, so that methods they were collected for can be garbage
+     * collected.
+     */
+    public void clearCache() {
+        facts.clear();
+    }
+}
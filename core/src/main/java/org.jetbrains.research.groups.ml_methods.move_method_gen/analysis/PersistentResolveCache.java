@@ -0,0 +1,499 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.analysis;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.OrderEnumerator;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.JarFileSystem;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.*;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.ProjectFileInventory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link ReferenceResolver} which remembers targets of references between runs of the generator.
+ * A reference is identified by the hash of contents of its file, its text range in this file and
+ * its text, so references from unchanged files are found in the cache even if the project was
+ * moved or checked out at another commit. The whole range is needed since a qualifier starts at
+ * the same offset as the reference it qualifies. The hash of the file with the target is stored
+ * too, and cached target is used only if that file is also unchanged. Targets outside of the
+ * project (libraries and JDK) are assumed to never change. Unresolved references are never
+ * cached. Entries of files which were changed or removed since they were cached are dropped when
+ * the cache is saved.
+ *
+ * A change in one file can change the target of a reference from another unchanged file without
+ * changing the file with the old target, e.g. a new class which shadows an imported one or a new
+ * overload of a called method. Such changes can only come from declarations, so the cache is
+ * stored together with a fingerprint of all declarations visible to references: paths of project
+ * Java files, their classes and signatures of class members, and roots of libraries and JDK.
+ * If the fingerprint differs from the one of the project, the whole cache is dropped.
+ */
+public class PersistentResolveCache implements ReferenceResolver {
+    private static final @NotNull CSVFormat FORMAT = CSVFormat.RFC4180.withHeader(
+        "file", "file_hash", "start_offset", "end_offset", "text",
+        "kind", "identity", "owner", "public", "private", "target_file", "target_file_hash"
+    );
+
+    private static final @NotNull String FINGERPRINT_FILE_SUFFIX = ".declarations";
+
+    private final @NotNull Project project;
+
+    private final @NotNull Path path;
+
+    private final @NotNull String fingerprint;
+
+    private final @NotNull Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    private final @NotNull Map<VirtualFile, String> fileHashes = new ConcurrentHashMap<>();
+
+    private final @NotNull LongAdder hits = new LongAdder();
+
+    private final @NotNull LongAdder misses = new LongAdder();
+
+    private PersistentResolveCache(
+        final @NotNull Project project,
+        final @NotNull Path path,
+        final @NotNull String fingerprint
+    ) {
+        this.project = project;
+        this.path = path;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Reads cache from the given file. If there is no such file, it was written in another
+     * format or declarations of the project changed since it was written the cache is empty.
+     */
+    public static @NotNull PersistentResolveCache load(
+        final @NotNull Project project,
+        final @NotNull Path path
+    ) throws IOException {
+        PersistentResolveCache cache = new PersistentResolveCache(
+            project,
+            path,
+            ApplicationManager.getApplication().runReadAction(
+                (Computable<String>) () -> fingerprintOfDeclarations(project)
+            )
+        );
+
+        Path fingerprintPath = fingerprintPathOf(path);
+        if (!Files.exists(path) || !Files.exists(fingerprintPath)) {
+            return cache;
+        }
+
+        String storedFingerprint = new String(Files.readAllBytes(fingerprintPath), StandardCharsets.UTF_8).trim();
+        if (!storedFingerprint.equals(cache.fingerprint)) {
+            return cache;
+        }
+
+        try (
+            BufferedReader reader = Files.newBufferedReader(path);
+            CSVParser parser = CSVFormat.RFC4180.withFirstRecordAsHeader().parse(reader)
+        ) {
+            if (!parser.getHeaderMap().keySet().equals(new HashSet<>(Arrays.asList(FORMAT.getHeader())))) {
+                return cache;
+            }
+
+            for (CSVRecord record : parser) {
+                ResolvedTarget target = new ResolvedTarget(
+                    ResolvedTarget.Kind.valueOf(record.get("kind")),
+                    record.get("identity"),
+                    record.get("owner"),
+                    Boolean.parseBoolean(record.get("public")),
+                    Boolean.parseBoolean(record.get("private")),
+                    null
+                );
+
+                cache.entries.put(
+                    new Key(
+                        record.get("file_hash"),
+                        Integer.parseInt(record.get("start_offset")),
+                        Integer.parseInt(record.get("end_offset")),
+                        record.get("text")
+                    ),
+                    new Entry(record.get("file"), target, record.get("target_file"), record.get("target_file_hash"))
+                );
+            }
+        }
+
+        return cache;
+    }
+
+    /**
+     * Writes cache to the file it was loaded from. The file is replaced atomically, so an
+     * interrupted run never leaves a broken cache. Entries of files whose contents differ from
+     * the cached ones are dropped.
+     */
+    public void save() throws IOException {
+        dropStaleEntries();
+
+        // Without a fingerprint the cache is never used, so a run interrupted between two moves leaves no stale cache
+        Files.deleteIfExists(fingerprintPathOf(path));
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (
+            BufferedWriter writer = Files.newBufferedWriter(tmp);
+            CSVPrinter csvPrinter = new CSVPrinter(writer, FORMAT)
+        ) {
+            for (Map.Entry<Key, Entry> it : entries.entrySet()) {
+                Key key = it.getKey();
+                Entry entry = it.getValue();
+                ResolvedTarget target = entry.target;
+
+                csvPrinter.printRecord(
+                    entry.file,
+                    key.fileHash,
+                    key.startOffset,
+                    key.endOffset,
+                    key.text,
+                    target.getKind(),
+                    target.getIdentity(),
+                    target.getOwner(),
+                    target.isPublic(),
+                    target.isPrivate(),
+                    entry.targetFile,
+                    entry.targetFileHash
+                );
+            }
+        }
+
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        Path fingerprintTmp = fingerprintPathOf(tmp);
+        Files.write(fingerprintTmp, fingerprint.getBytes(StandardCharsets.UTF_8));
+        Files.move(
+            fingerprintTmp,
+            fingerprintPathOf(path),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE
+        );
+    }
+
+    @Override
+    public @NotNull ResolvedTarget resolve(final @NotNull PsiJavaCodeReferenceElement reference) {
+        PsiFile file = reference.getContainingFile();
+        String fileHash = hashOf(file);
+        if (fileHash == null) {
+            return DIRECT.resolve(reference);
+        }
+
+        String filePath = relativePathOf(file.getViewProvider().getVirtualFile());
+        TextRange range = reference.getTextRange();
+        Key key = new Key(fileHash, range.getStartOffset(), range.getEndOffset(), reference.getText());
+
+        Entry entry = entries.get(key);
+        if (entry != null && isValid(entry)) {
+            hits.increment();
+            return entry.target;
+        }
+
+        misses.increment();
+
+        PsiElement element = reference.resolve();
+        ResolvedTarget target = ResolvedTarget.of(element);
+        if (element == null) {
+            return target;
+        }
+
+        PsiFile targetFile = element.getContainingFile();
+        String targetPath = targetFile == null ? null : relativePathOf(targetFile.getVirtualFile());
+
+        if (targetPath == null) {
+            entries.put(key, new Entry(filePath, target, "", ""));
+        } else {
+            String targetFileHash = hashOf(targetFile);
+            if (targetFileHash != null) {
+                entries.put(key, new Entry(filePath, target, targetPath, targetFileHash));
+            }
+        }
+
+        return target;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private static @NotNull Path fingerprintPathOf(final @NotNull Path path) {
+        return path.resolveSibling(path.getFileName() + FINGERPRINT_FILE_SUFFIX);
+    }
+
+    /**
+     * Computes hash of everything outside of a file which can affect targets of its references.
+     * Bodies of methods and initializers are not included, so it is computed from stubs without
+     * parsing files. Must be called inside of a read action.
+     */
+    private static @NotNull String fingerprintOfDeclarations(final @NotNull Project project) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        VirtualFile baseDir = project.getBaseDir();
+        List<PsiJavaFile> javaFiles = new ArrayList<>(ProjectFileInventory.getInstance(project).getJavaFiles());
+        javaFiles.sort(Comparator.comparing(file -> file.getVirtualFile().getPath()));
+
+        StringBuilder declarations = new StringBuilder();
+        for (PsiJavaFile file : javaFiles) {
+            String filePath = baseDir == null ? null : VfsUtilCore.getRelativePath(file.getVirtualFile(), baseDir);
+            declarations.append("file ").append(filePath == null ? file.getVirtualFile().getPath() : filePath)
+                .append(' ').append(file.getPackageName()).append('\n');
+
+            for (PsiClass aClass : file.getClasses()) {
+                appendDeclarations(aClass, declarations);
+            }
+
+            digest.update(declarations.toString().getBytes(StandardCharsets.UTF_8));
+            declarations.setLength(0);
+        }
+
+        List<VirtualFile> roots = new ArrayList<>(Arrays.asList(
+            OrderEnumerator.orderEntries(project).getAllLibrariesAndSdkClassesRoots()
+        ));
+        roots.sort(Comparator.comparing(VirtualFile::getUrl));
+
+        for (VirtualFile root : roots) {
+            declarations.append("root ").append(root.getUrl());
+
+            VirtualFile archive = JarFileSystem.getInstance().getLocalByEntry(root);
+            if (archive != null) {
+                declarations.append(' ').append(archive.getLength()).append(' ').append(archive.getTimeStamp());
+            }
+
+            declarations.append('\n');
+        }
+
+        digest.update(declarations.toString().getBytes(StandardCharsets.UTF_8));
+
+        return StringUtil.toHexString(digest.digest());
+    }
+
+    private static void appendDeclarations(final @NotNull PsiClass aClass, final @NotNull StringBuilder out) {
+        out.append("class ").append(aClass.getName());
+        appendModifiers(aClass, out);
+        appendTypeParameters(aClass, out);
+        out.append(" extends");
+        appendTypes(aClass.getExtendsListTypes(), out);
+        out.append(" implements");
+        appendTypes(aClass.getImplementsListTypes(), out);
+        out.append('\n');
+
+        for (PsiField field : aClass.getFields()) {
+            out.append("field ").append(field.getName()).append(' ').append(field.getType().getCanonicalText());
+            appendModifiers(field, out);
+            out.append('\n');
+        }
+
+        for (PsiMethod method : aClass.getMethods()) {
+            PsiType returnType = method.getReturnType();
+
+            out.append("method ").append(method.getName())
+                .append(' ').append(returnType == null ? "" : returnType.getCanonicalText());
+            appendModifiers(method, out);
+            appendTypeParameters(method, out);
+            out.append(" (");
+            for (PsiParameter parameter : method.getParameterList().getParameters()) {
+                out.append(parameter.getType().getCanonicalText()).append(',');
+            }
+            out.append(")\n");
+        }
+
+        for (PsiClass innerClass : aClass.getInnerClasses()) {
+            appendDeclarations(innerClass, out);
+        }
+
+        out.append("end\n");
+    }
+
+    private static void appendModifiers(final @NotNull PsiModifierListOwner owner, final @NotNull StringBuilder out) {
+        for (String modifier : PsiModifier.MODIFIERS) {
+            if (owner.hasModifierProperty(modifier)) {
+                out.append(' ').append(modifier);
+            }
+        }
+    }
+
+    private static void appendTypeParameters(
+        final @NotNull PsiTypeParameterListOwner owner,
+        final @NotNull StringBuilder out
+    ) {
+        out.append(" <");
+        for (PsiTypeParameter typeParameter : owner.getTypeParameters()) {
+            out.append(typeParameter.getName()).append(',');
+        }
+        out.append('>');
+    }
+
+    private static void appendTypes(final @NotNull PsiClassType[] types, final @NotNull StringBuilder out) {
+        for (PsiClassType type : types) {
+            out.append(' ').append(type.getCanonicalText());
+        }
+    }
+
+    /**
+     * Removes entries whose file is changed or removed, so that the cache doesn't grow with
+     * every version of a file.
+     */
+    private void dropStaleEntries() {
+        VirtualFile baseDir = project.getBaseDir();
+        Map<String, String> currentHashes = new HashMap<>();
+
+        entries.entrySet().removeIf(it -> {
+            String currentHash = currentHashes.computeIfAbsent(it.getValue().file, file -> {
+                VirtualFile virtualFile = baseDir == null ? null : baseDir.findFileByRelativePath(file);
+                String hash = virtualFile == null ? null : hashOf(virtualFile);
+
+                return hash == null ? "" : hash;
+            });
+
+            return !currentHash.equals(it.getKey().fileHash);
+        });
+    }
+
+    private boolean isValid(final @NotNull Entry entry) {
+        if (entry.targetFile.isEmpty()) {
+            return true;
+        }
+
+        VirtualFile baseDir = project.getBaseDir();
+        VirtualFile targetFile = baseDir == null ? null : baseDir.findFileByRelativePath(entry.targetFile);
+
+        return targetFile != null && entry.targetFileHash.equals(hashOf(targetFile));
+    }
+
+    private @Nullable String relativePathOf(final @Nullable VirtualFile file) {
+        VirtualFile baseDir = project.getBaseDir();
+        if (file == null || baseDir == null) {
+            return null;
+        }
+
+        return VfsUtilCore.getRelativePath(file, baseDir);
+    }
+
+    private @Nullable String hashOf(final @Nullable PsiFile file) {
+        if (file == null) {
+            return null;
+        }
+
+        VirtualFile virtualFile = file.getViewProvider().getVirtualFile();
+        if (relativePathOf(virtualFile) == null) {
+            return null;
+        }
+
+        return hashOf(virtualFile);
+    }
+
+    private @Nullable String hashOf(final @NotNull VirtualFile file) {
+        String hash = fileHashes.get(file);
+        if (hash != null) {
+            return hash;
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            hash = StringUtil.toHexString(digest.digest(file.contentsToByteArray()));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            return null;
+        }
+
+        fileHashes.put(file, hash);
+        return hash;
+    }
+
+    private static class Key {
+        private final @NotNull String fileHash;
+
+        private final int startOffset;
+
+        private final int endOffset;
+
+        private final @NotNull String text;
+
+        private Key(
+            final @NotNull String fileHash,
+            final int startOffset,
+            final int endOffset,
+            final @NotNull String text
+        ) {
+            this.fileHash = fileHash;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.text = text;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            Key key = (Key) o;
+            return startOffset == key.startOffset &&
+                   endOffset == key.endOffset &&
+                   fileHash.equals(key.fileHash) &&
+                   text.equals(key.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fileHash, startOffset, endOffset, text);
+        }
+    }
+
+    private static class Entry {
+        /**
+         * Path of the file with the reference relative to the project folder.
+         */
+        private final @NotNull String file;
+
+        private final @NotNull ResolvedTarget target;
+
+        private final @NotNull String targetFile;
+
+        private final @NotNull String targetFileHash;
+
+        private Entry(
+            final @NotNull String file,
+            final @NotNull ResolvedTarget target,
+            final @NotNull String targetFile,
+            final @NotNull String targetFileHash
+        ) {
+            this.file = file;
+            this.target = target;
+            this.targetFile = targetFile;
+            this.targetFileHash = targetFileHash;
+        }
+    }
+}
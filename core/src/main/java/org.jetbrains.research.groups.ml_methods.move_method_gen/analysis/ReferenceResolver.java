@@ -0,0 +1,16 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.analysis;
+
+import com.intellij.psi.PsiJavaCodeReferenceElement;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Source of targets of references for methods analysis.
+ */
+public interface ReferenceResolver {
+    /**
+     * Resolves every reference through PSI.
+     */
+    @NotNull ReferenceResolver DIRECT = reference -> ResolvedTarget.of(reference.resolve());
+
+    @NotNull ResolvedTarget resolve(@NotNull PsiJavaCodeReferenceElement reference);
+}
@@ -0,0 +1,124 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.analysis;
+
+import com.intellij.lang.jvm.JvmModifier;
+import com.intellij.psi.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Everything methods filters need to know about the target of a reference. Unlike the target
+ * element itself it can be stored on disk and restored in the next run of the generator.
+ */
+public class ResolvedTarget {
+    public enum Kind {
+        CLASS,
+        TYPE_PARAMETER,
+        METHOD,
+        FIELD,
+        PARAMETER,
+        OTHER,
+        UNRESOLVED
+    }
+
+    private static final @NotNull ResolvedTarget UNRESOLVED =
+        new ResolvedTarget(Kind.UNRESOLVED, "", "", false, false, null);
+
+    private final @NotNull Kind kind;
+
+    private final @NotNull String identity;
+
+    private final @NotNull String owner;
+
+    private final boolean isPublic;
+
+    private final boolean isPrivate;
+
+    private final @Nullable PsiElement element;
+
+    public ResolvedTarget(
+        final @NotNull Kind kind,
+        final @NotNull String identity,
+        final @NotNull String owner,
+        final boolean isPublic,
+        final boolean isPrivate,
+        final @Nullable PsiElement element
+    ) {
+        this.kind = kind;
+        this.identity = identity;
+        this.owner = owner;
+        this.isPublic = isPublic;
+        this.isPrivate = isPrivate;
+        this.element = element;
+    }
+
+    public static @NotNull ResolvedTarget of(final @Nullable PsiElement element) {
+        if (element == null) {
+            return UNRESOLVED;
+        }
+
+        Kind kind;
+        if (element instanceof PsiTypeParameter) {
+            kind = Kind.TYPE_PARAMETER;
+        } else if (element instanceof PsiClass) {
+            kind = Kind.CLASS;
+        } else if (element instanceof PsiMethod) {
+            kind = Kind.METHOD;
+        } else if (element instanceof PsiField) {
+            kind = Kind.FIELD;
+        } else if (element instanceof PsiParameter) {
+            kind = Kind.PARAMETER;
+        } else {
+            kind = Kind.OTHER;
+        }
+
+        boolean isPublic = false;
+        boolean isPrivate = false;
+        if (element instanceof PsiModifierListOwner) {
+            PsiModifierListOwner owner = (PsiModifierListOwner) element;
+
+            isPublic = owner.hasModifierProperty(PsiModifier.PUBLIC);
+            isPrivate = owner.hasModifier(JvmModifier.PRIVATE);
+        }
+
+        return new ResolvedTarget(
+            kind,
+            ElementIdentity.of(element),
+            ElementIdentity.ownerOf(element),
+            isPublic,
+            isPrivate,
+            element
+        );
+    }
+
+    public @NotNull Kind getKind() {
+        return kind;
+    }
+
+    public @NotNull String getIdentity() {
+        return identity;
+    }
+
+    /**
+     * Identity of the class or method which declares the target, see
+     * {@link ElementIdentity#ownerOf}.
+     */
+    public @NotNull String getOwner() {
+        return owner;
+    }
+
+    public boolean isPublic() {
+        return isPublic;
+    }
+
+    public boolean isPrivate() {
+        return isPrivate;
+    }
+
+    /**
+     * The target element itself. Available only if the reference was actually resolved in
+     * this run and {@code null} for targets restored from disk.
+     */
+    public @Nullable PsiElement getElement() {
+        return element;
+    }
+}
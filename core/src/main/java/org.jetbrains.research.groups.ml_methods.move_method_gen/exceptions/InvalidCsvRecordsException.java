@@ -0,0 +1,39 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.exceptions;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Several records of csv input don't match the project. Carries descriptions of all problems,
+ * while the message lists only the first of them.
+ */
+public class InvalidCsvRecordsException extends InvalidCsvInputException {
+    private static final int PROBLEMS_IN_MESSAGE = 10;
+
+    private final @NotNull List<String> problems;
+
+    public InvalidCsvRecordsException(final @NotNull List<String> problems) {
+        super(createMessage(problems));
+        this.problems = new ArrayList<>(problems);
+    }
+
+    public @NotNull List<String> getProblems() {
+        return Collections.unmodifiableList(problems);
+    }
+
+    private static @NotNull String createMessage(final @NotNull List<String> problems) {
+        StringBuilder message = new StringBuilder(problems.size() + " invalid records:");
+        for (String problem : problems.subList(0, Math.min(problems.size(), PROBLEMS_IN_MESSAGE))) {
+            message.append(System.lineSeparator()).append(problem);
+        }
+
+        if (problems.size() > PROBLEMS_IN_MESSAGE) {
+            message.append(System.lineSeparator()).append("...");
+        }
+
+        return message.toString();
+    }
+}
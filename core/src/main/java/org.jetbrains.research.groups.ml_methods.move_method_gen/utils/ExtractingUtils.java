@@ -1,12 +1,11 @@
 package org.jetbrains.research.groups.ml_methods.move_method_gen.utils;
 
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.roots.ProjectFileIndex;
 import com.intellij.psi.*;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -14,54 +13,21 @@ public class ExtractingUtils {
     private ExtractingUtils() { }
 
     public static @NotNull List<PsiJavaFile> extractAllJavaFiles(final @NotNull Project project) {
-        List<PsiJavaFile> javaFiles = new ArrayList<>();
-
-        ProjectFileIndex.SERVICE.getInstance(project).iterateContent(
-            virtualFile -> {
-                if (!virtualFile.isDirectory() && "java".equals(virtualFile.getExtension())) {
-                    PsiFile psiFile = PsiManager.getInstance(project).findFile(virtualFile);
-
-                    if (psiFile == null) {
-                        System.err.println("Invalid virtual file encountered!");
-                        return true;
-                    }
-
-                    if (!(psiFile instanceof PsiJavaFile)) {
-                        System.err.println("Not a java file with java extension encountered!");
-                        return true;
-                    }
-
-                    javaFiles.add((PsiJavaFile) psiFile);
-                }
-
-                return true;
-            }
-        );
-
-        return javaFiles;
+        return ProjectFileInventory.getInstance(project).getJavaFiles();
     }
 
     public static @NotNull List<PsiJavaFile> extractSourceJavaFiles(
         final @NotNull Project project
     ) {
-        /*
-        Possible alternative
-
-        Module[] modules = ModuleManager.getInstance(project).getModules();
-
-        for (Module module : modules) {
-            VirtualFile[] srcRoots =
-                ModuleRootManager.getInstance(module).orderEntries().getAllSourceRoots();
-
-            for (VirtualFile root : srcRoots) {
-                // ...
-            }
-        }*/
+        return ProjectFileInventory.getInstance(project).getJavaFiles(
+            EnumSet.of(ProjectFileInventory.Kind.SOURCE, ProjectFileInventory.Kind.TEST_SOURCE)
+        );
+    }
 
-        ProjectFileIndex projectFileIndex = ProjectFileIndex.SERVICE.getInstance(project);
-        return extractAllJavaFiles(project).stream()
-                .filter(it -> projectFileIndex.isInSource(it.getVirtualFile()))
-                .collect(Collectors.toList());
+    public static @NotNull List<PsiJavaFile> extractNotSourceJavaFiles(
+        final @NotNull Project project
+    ) {
+        return ProjectFileInventory.getInstance(project).getJavaFiles(EnumSet.of(ProjectFileInventory.Kind.NOT_SOURCE));
     }
 
     public static @NotNull List<PsiClass> extractClasses(
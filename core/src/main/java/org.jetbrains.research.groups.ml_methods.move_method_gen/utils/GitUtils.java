@@ -0,0 +1,104 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class GitUtils {
+    public static final @NotNull String META_INFO_FILE_NAME = "meta-info";
+
+    private GitUtils() { }
+
+    /**
+     * Runs git with the given arguments inside of the given directory and returns lines of its
+     * standard output.
+     */
+    public static @NotNull List<String> git(
+        final @NotNull Path directory,
+        final @NotNull String... args
+    ) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.addAll(Arrays.asList(args));
+
+        Process process = new ProcessBuilder(command)
+            .directory(directory.toFile())
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+
+        List<String> lines = new ArrayList<>();
+        try (
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)
+            )
+        ) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+
+        int exitCode;
+        try {
+            exitCode = process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + String.join(" ", command), e);
+        }
+
+        if (exitCode != 0) {
+            throw new IOException(String.join(" ", command) + " exited with code " + exitCode);
+        }
+
+        return lines;
+    }
+
+    public static @NotNull String headCommit(final @NotNull Path repository) throws IOException {
+        return git(repository, "rev-parse", "HEAD").get(0);
+    }
+
+    /**
+     * Writes url of the origin remote and the commit checked out in the given repository into
+     * meta-info file of the given directory. The format is the same as in data/mined-data-iwor.
+     */
+    public static void writeMetaInfo(final @NotNull Path repository, final @NotNull Path targetDir) throws IOException {
+        String commit = headCommit(repository);
+
+        String url = "";
+        try {
+            List<String> lines = git(repository, "config", "--get", "remote.origin.url");
+            if (!lines.isEmpty()) {
+                url = lines.get(0);
+            }
+        } catch (IOException ignored) {
+            // repository has no origin remote
+        }
+
+        targetDir.toFile().mkdirs();
+        Files.write(
+            targetDir.resolve(META_INFO_FILE_NAME),
+            Arrays.asList(url, commit),
+            StandardCharsets.UTF_8
+        );
+    }
+
+    /**
+     * Reads the commit recorded in meta-info file of the given directory.
+     */
+    public static @NotNull String readMetaInfoCommit(final @NotNull Path dir) throws IOException {
+        List<String> lines = Files.readAllLines(dir.resolve(META_INFO_FILE_NAME), StandardCharsets.UTF_8);
+        if (lines.size() < 2 || lines.get(1).trim().isEmpty()) {
+            throw new IOException("No commit recorded in " + dir.resolve(META_INFO_FILE_NAME));
+        }
+
+        return lines.get(1).trim();
+    }
+}
@@ -2,7 +2,6 @@ package org.jetbrains.research.groups.ml_methods.move_method_gen.utils;
 
 import com.intellij.lang.ASTNode;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.psi.*;
@@ -12,6 +11,7 @@ import org.jetbrains.annotations.NotNull;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Optional;
+import java.util.function.Predicate;
 
 public class JavaFileUtils {
     private JavaFileUtils() {}
@@ -74,23 +74,12 @@ public class JavaFileUtils {
         final @NotNull String className,
         final int classOffset
     ) {
-        Ref<PsiClass> resultRef = new Ref<>(null);
-
-        new JavaRecursiveElementVisitor() {
-            @Override
-            public void visitClass(final @NotNull PsiClass aClass) {
-                super.visitClass(aClass);
-
-                if (
-                    className.equals(aClass.getQualifiedName()) &&
-                    classOffset == aClass.getNode().getStartOffset()
-                ) {
-                    resultRef.set(aClass);
-                }
-            }
-        }.visitElement(file);
-
-        return Optional.ofNullable(resultRef.get());
+        return getElementByLocation(
+            file,
+            PsiClass.class,
+            classOffset,
+            it -> className.equals(it.getQualifiedName())
+        );
     }
 
     public static @NotNull Optional<PsiMethod> getMethodByLocation(
@@ -98,23 +87,40 @@ public class JavaFileUtils {
         final @NotNull String methodName,
         final int methodOffset
     ) {
-        Ref<PsiMethod> resultRef = new Ref<>(null);
-
-        new JavaRecursiveElementVisitor() {
-            @Override
-            public void visitMethod(final @NotNull PsiMethod method) {
-                super.visitMethod(method);
-
-                if (
-                    methodName.equals(MethodUtils.fullyQualifiedName(method)) &&
-                    methodOffset == method.getNode().getStartOffset()
-                ) {
-                    resultRef.set(method);
-                }
+        return getElementByLocation(
+            file,
+            PsiMethod.class,
+            methodOffset,
+            it -> methodName.equals(MethodUtils.fullyQualifiedName(it))
+        );
+    }
+
+    /**
+     * Finds element of the given class which starts exactly at the given offset. Only the leaf
+     * at the offset and its parents which start at the same offset are examined.
+     */
+    private static @NotNull <T extends PsiElement> Optional<T> getElementByLocation(
+        final @NotNull PsiJavaFile file,
+        final @NotNull Class<T> elementClass,
+        final int offset,
+        final @NotNull Predicate<T> condition
+    ) {
+        PsiElement element = file.findElementAt(offset);
+
+        while (element != null && !(element instanceof PsiFile)) {
+            int startOffset = element.getNode().getStartOffset();
+            if (startOffset != offset) {
+                break;
+            }
+
+            if (elementClass.isInstance(element) && condition.test(elementClass.cast(element))) {
+                return Optional.of(elementClass.cast(element));
             }
-        }.visitElement(file);
 
-        return Optional.ofNullable(resultRef.get());
+            element = element.getParent();
+        }
+
+        return Optional.empty();
     }
 
     public static @NotNull Path getPathToContainingFile(final @NotNull PsiElement element) {
@@ -0,0 +1,76 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.utils;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations in nanoseconds which can be updated from several threads at once.
+ * Values are grouped into buckets by powers of two, so percentiles are precise up to a factor
+ * of two which is enough to compare costs of different pipeline stages.
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS_NUMBER = Long.SIZE + 1;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS_NUMBER];
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder total = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS_NUMBER; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(final long nanos) {
+        long value = Math.max(0, nanos);
+
+        buckets[Long.SIZE - Long.numberOfLeadingZeros(value)].increment();
+        count.increment();
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return total.sum();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    public long getMeanNanos() {
+        long count = getCount();
+        return count == 0 ? 0 : getTotalNanos() / count;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile.
+     *
+     * @param percentile value from 0 to 100.
+     */
+    public long getPercentileNanos(final double percentile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS_NUMBER; i++) {
+            seen += buckets[i].sum();
+            if (seen >= rank) {
+                return Math.min(i == 0 ? 0 : (1L << i) - 1, getMaxNanos());
+            }
+        }
+
+        return getMaxNanos();
+    }
+}
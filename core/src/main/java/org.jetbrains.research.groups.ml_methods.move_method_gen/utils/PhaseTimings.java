@@ -0,0 +1,157 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.utils;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.ThrowableComputable;
+import com.intellij.util.ThrowableRunnable;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall clock time of phases of a run. A phase can be measured many times, for example once per
+ * moved method, then all its durations get into its {@link LatencyHistogram}. Phases may be
+ * nested, so their times don't sum up to the time of the whole run. Phases are reported in the
+ * order they are first measured. Every project has its own timings which live as long as the
+ * project. Can be used from several threads.
+ */
+public class PhaseTimings {
+    private static final @NotNull Map<Project, PhaseTimings> INSTANCES = new ConcurrentHashMap<>();
+
+    private final @NotNull Map<String, LatencyHistogram> phases = new LinkedHashMap<>();
+
+    /**
+     * Creates timings which are not bound to any project.
+     */
+    public PhaseTimings() {
+    }
+
+    public static @NotNull PhaseTimings getInstance(final @NotNull Project project) {
+        return INSTANCES.computeIfAbsent(project, it -> {
+            Disposer.register(project, () -> INSTANCES.remove(project));
+            return new PhaseTimings();
+        });
+    }
+
+    public <E extends Throwable> void measure(
+        final @NotNull String phase,
+        final @NotNull ThrowableRunnable<E> runnable
+    ) throws E {
+        long start = System.nanoTime();
+        try {
+            runnable.run();
+        } finally {
+            record(phase, System.nanoTime() - start);
+        }
+    }
+
+    public <T, E extends Throwable> T compute(
+        final @NotNull String phase,
+        final @NotNull ThrowableComputable<T, E> computable
+    ) throws E {
+        long start = System.nanoTime();
+        try {
+            return computable.compute();
+        } finally {
+            record(phase, System.nanoTime() - start);
+        }
+    }
+
+    public void record(final @NotNull String phase, final long nanos) {
+        latenciesOf(phase).record(nanos);
+    }
+
+    /**
+     * Reports durations which are gathered into the given histogram elsewhere as the given
+     * phase. Durations recorded into the histogram later are reported too.
+     */
+    public synchronized void record(final @NotNull String phase, final @NotNull LatencyHistogram latencies) {
+        phases.put(phase, latencies);
+    }
+
+    public synchronized @NotNull String getSummary() {
+        StringBuilder summary = new StringBuilder(
+            String.format("%-50s %10s %12s %12s %12s", "Phase", "Count", "Total, ms", "Mean, ms", "Max, ms")
+        );
+
+        phases.forEach((phase, latencies) -> summary.append(String.format(
+            "%n%-50s %10d %12d %12d %12d",
+            phase,
+            latencies.getCount(),
+            toMillis(latencies.getTotalNanos()),
+            toMillis(latencies.getMeanNanos()),
+            toMillis(latencies.getMaxNanos())
+        )));
+
+        return summary.toString();
+    }
+
+    /**
+     * Writes timings into a json file with the given name, replacing an existing one. Peak heap
+     * usage of the whole JVM is written along with them.
+     */
+    public synchronized void serialize(final @NotNull Path targetDir, final @NotNull String fileName) throws IOException {
+        targetDir.toFile().mkdirs();
+
+        JsonArray phasesJson = new JsonArray();
+        phases.forEach((phase, latencies) -> {
+            JsonObject stats = new JsonObject();
+            stats.addProperty("name", phase);
+            stats.addProperty("count", latencies.getCount());
+            stats.addProperty("total_nanos", latencies.getTotalNanos());
+            stats.addProperty("mean_nanos", latencies.getMeanNanos());
+            stats.addProperty("p50_nanos", latencies.getPercentileNanos(50));
+            stats.addProperty("p90_nanos", latencies.getPercentileNanos(90));
+            stats.addProperty("p99_nanos", latencies.getPercentileNanos(99));
+            stats.addProperty("max_nanos", latencies.getMaxNanos());
+
+            phasesJson.add(stats);
+        });
+
+        JsonObject root = new JsonObject();
+        root.addProperty("peak_heap_bytes", getPeakHeapBytes());
+        root.add("phases", phasesJson);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(targetDir.resolve(fileName))) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(root, writer);
+        }
+    }
+
+    /**
+     * Returns sum of peak usages of heap memory pools. Pools reach their peaks at different
+     * moments, so it is an upper bound of the peak heap usage.
+     */
+    public static long getPeakHeapBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = pool.getPeakUsage();
+            if (pool.getType() == MemoryType.HEAP && usage != null) {
+                peak += usage.getUsed();
+            }
+        }
+
+        return peak;
+    }
+
+    private synchronized @NotNull LatencyHistogram latenciesOf(final @NotNull String phase) {
+        return phases.computeIfAbsent(phase, it -> new LatencyHistogram());
+    }
+
+    private static long toMillis(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -4,18 +4,22 @@ import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleManager;
 import com.intellij.openapi.module.StdModuleTypes;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ContentEntry;
 import com.intellij.openapi.roots.ModifiableRootModel;
 import com.intellij.openapi.roots.ModuleRootManager;
 import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiDirectory;
 import com.intellij.psi.PsiJavaFile;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.exceptions.UnsupportedDirectoriesLayoutException;
 
-import java.util.List;
-import java.util.Optional;
-import java.util.Set;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
 import java.util.stream.Collectors;
 
 public class PreprocessingUtils {
@@ -46,9 +50,7 @@ public class PreprocessingUtils {
 
         ProjectFileIndex projectFileIndex = ProjectFileIndex.SERVICE.getInstance(project);
 
-        List<PsiJavaFile> notSourceFiles = ExtractingUtils.extractAllJavaFiles(project).stream()
-                .filter(it -> !projectFileIndex.isInSource(it.getVirtualFile()))
-                .collect(Collectors.toList());
+        List<PsiJavaFile> notSourceFiles = ExtractingUtils.extractNotSourceJavaFiles(project);
 
         Set<PsiDirectory> javaDirectories = notSourceFiles.stream()
             .map(JavaFileUtils::getDirectoryWithRootPackageFor)
@@ -86,4 +88,134 @@ public class PreprocessingUtils {
             }
         }
     }
+
+    /**
+     * Finds directories of the project which should not be indexed: directories matching any of
+     * the given glob patterns and directories with generated code.
+     *
+     * @param patterns glob patterns. A pattern with a slash is matched against the path of a
+     *                 directory relative to the project, any other pattern is matched against
+     *                 the name of a directory. Directories inside of {@code src} directories are
+     *                 never matched by name, so that packages with the same names are kept.
+     * @param generatedFileSize directory is considered generated if the average size of java
+     *                          files directly inside of it is greater than this number of bytes,
+     *                          {@code 0} turns detection of generated directories off.
+     */
+    public static @NotNull List<Path> findDirectoriesToExclude(
+        final @NotNull Path projectDir,
+        final @NotNull List<String> patterns,
+        final long generatedFileSize
+    ) throws IOException {
+        List<PathMatcher> nameMatchers = new ArrayList<>();
+        List<PathMatcher> pathMatchers = new ArrayList<>();
+        for (String pattern : patterns) {
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            (pattern.contains("/") ? pathMatchers : nameMatchers).add(matcher);
+        }
+
+        Map<Path, long[]> javaFilesSizeAndCount = new HashMap<>();
+
+        List<Path> result = new ArrayList<>();
+        Files.walkFileTree(projectDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(
+                final @NotNull Path dir,
+                final @NotNull BasicFileAttributes attributes
+            ) {
+                if (dir.equals(projectDir)) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                Path relativePath = projectDir.relativize(dir);
+                String name = dir.getFileName().toString();
+                if (name.equals(".git") || name.equals(".idea")) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                boolean insideOfSources = false;
+                if (relativePath.getParent() != null) {
+                    for (Path segment : relativePath.getParent()) {
+                        insideOfSources |= segment.toString().equals("src");
+                    }
+                }
+
+                boolean matches =
+                    pathMatchers.stream().anyMatch(it -> it.matches(relativePath)) ||
+                    !insideOfSources && nameMatchers.stream().anyMatch(it -> it.matches(dir.getFileName()));
+
+                if (matches) {
+                    result.add(dir);
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final @NotNull Path file, final @NotNull BasicFileAttributes attributes) {
+                if (file.getFileName().toString().endsWith(".java")) {
+                    long[] sizeAndCount = javaFilesSizeAndCount.computeIfAbsent(file.getParent(), it -> new long[2]);
+                    sizeAndCount[0] += attributes.size();
+                    sizeAndCount[1]++;
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final @NotNull Path dir, final @Nullable IOException exception) {
+                long[] sizeAndCount = javaFilesSizeAndCount.remove(dir);
+                if (
+                    generatedFileSize > 0 &&
+                    sizeAndCount != null &&
+                    sizeAndCount[0] / sizeAndCount[1] > generatedFileSize &&
+                    !dir.equals(projectDir)
+                ) {
+                    result.add(dir);
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Marks the given directories as excluded in content entries of their modules. Directories
+     * which are not inside of a content entry are skipped. Must be called inside of a write action.
+     *
+     * @return number of excluded directories.
+     */
+    public static int excludeDirectories(final @NotNull Project project, final @NotNull List<VirtualFile> directories) {
+        ProjectFileIndex projectFileIndex = ProjectFileIndex.SERVICE.getInstance(project);
+
+        Map<Module, List<VirtualFile>> directoriesOfModule = new LinkedHashMap<>();
+        for (VirtualFile directory : directories) {
+            Module module = projectFileIndex.getModuleForFile(directory);
+            if (module != null) {
+                directoriesOfModule.computeIfAbsent(module, it -> new ArrayList<>()).add(directory);
+            }
+        }
+
+        int excluded = 0;
+        for (Map.Entry<Module, List<VirtualFile>> entry : directoriesOfModule.entrySet()) {
+            ModifiableRootModel model = ModuleRootManager.getInstance(entry.getKey()).getModifiableModel();
+
+            for (VirtualFile directory : entry.getValue()) {
+                for (ContentEntry contentEntry : model.getContentEntries()) {
+                    VirtualFile root = contentEntry.getFile();
+                    if (root != null && VfsUtilCore.isAncestor(root, directory, true)) {
+                        contentEntry.addExcludeFolder(directory);
+                        excluded++;
+                        break;
+                    }
+                }
+            }
+
+            model.commit();
+        }
+
+        return excluded;
+    }
 }
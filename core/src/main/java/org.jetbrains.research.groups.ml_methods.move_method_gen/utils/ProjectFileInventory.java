@@ -0,0 +1,135 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.utils;
+
+import com.intellij.ProjectTopics;
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootEvent;
+import com.intellij.openapi.roots.ModuleRootListener;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.psi.PsiManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Java files of project content and their kinds. Content is scanned once and scanned again only
+ * after roots of the project change. Only virtual files are kept and PSI is not loaded during
+ * the scan. PSI files are looked up on every request, so that the inventory doesn't hold PSI of
+ * the whole project. Must be used inside of a read action.
+ */
+public class ProjectFileInventory {
+    public enum Kind {
+        SOURCE, TEST_SOURCE, NOT_SOURCE
+    }
+
+    private static final @NotNull Map<Project, ProjectFileInventory> INSTANCES = new ConcurrentHashMap<>();
+
+    private final @NotNull Project project;
+
+    private @Nullable Map<VirtualFile, Kind> kindOfFile;
+
+    private ProjectFileInventory(final @NotNull Project project) {
+        this.project = project;
+    }
+
+    public static @NotNull ProjectFileInventory getInstance(final @NotNull Project project) {
+        return INSTANCES.computeIfAbsent(project, it -> {
+            ProjectFileInventory inventory = new ProjectFileInventory(project);
+
+            project.getMessageBus().connect(project).subscribe(ProjectTopics.PROJECT_ROOTS, new ModuleRootListener() {
+                @Override
+                public void rootsChanged(final @NotNull ModuleRootEvent event) {
+                    inventory.invalidate();
+                }
+            });
+            Disposer.register(project, () -> INSTANCES.remove(project));
+
+            return inventory;
+        });
+    }
+
+    public @NotNull List<PsiJavaFile> getJavaFiles() {
+        return getJavaFiles(EnumSet.allOf(Kind.class));
+    }
+
+    /**
+     * Returns files of the given kinds in the order of content iteration.
+     */
+    public @NotNull List<PsiJavaFile> getJavaFiles(final @NotNull Set<Kind> kinds) {
+        PsiManager psiManager = PsiManager.getInstance(project);
+
+        List<PsiJavaFile> javaFiles = new ArrayList<>();
+        for (VirtualFile file : getVirtualFiles(kinds)) {
+            PsiFile psiFile = psiManager.findFile(file);
+            if (psiFile instanceof PsiJavaFile) {
+                javaFiles.add((PsiJavaFile) psiFile);
+            }
+        }
+
+        return javaFiles;
+    }
+
+    /**
+     * Same as {@link #getJavaFiles(Set)} but doesn't look up PSI of files.
+     */
+    public @NotNull List<VirtualFile> getVirtualFiles(final @NotNull Set<Kind> kinds) {
+        List<VirtualFile> files = new ArrayList<>();
+        for (Map.Entry<VirtualFile, Kind> entry : getKindOfFile().entrySet()) {
+            if (kinds.contains(entry.getValue()) && entry.getKey().isValid()) {
+                files.add(entry.getKey());
+            }
+        }
+
+        return files;
+    }
+
+    public @Nullable Kind getKind(final @NotNull VirtualFile file) {
+        return getKindOfFile().get(file);
+    }
+
+    public synchronized void invalidate() {
+        kindOfFile = null;
+    }
+
+    private synchronized @NotNull Map<VirtualFile, Kind> getKindOfFile() {
+        if (kindOfFile == null) {
+            kindOfFile = scan();
+        }
+
+        return kindOfFile;
+    }
+
+    private @NotNull Map<VirtualFile, Kind> scan() {
+        ProjectFileIndex projectFileIndex = ProjectFileIndex.SERVICE.getInstance(project);
+
+        Map<VirtualFile, Kind> result = new LinkedHashMap<>();
+        projectFileIndex.iterateContent(
+            virtualFile -> {
+                if (!virtualFile.isDirectory() && "java".equals(virtualFile.getExtension())) {
+                    if (!JavaFileType.INSTANCE.equals(virtualFile.getFileType())) {
+                        System.err.println("Not a java file with java extension encountered!");
+                        return true;
+                    }
+
+                    if (projectFileIndex.isInTestSourceContent(virtualFile)) {
+                        result.put(virtualFile, Kind.TEST_SOURCE);
+                    } else if (projectFileIndex.isInSource(virtualFile)) {
+                        result.put(virtualFile, Kind.SOURCE);
+                    } else {
+                        result.put(virtualFile, Kind.NOT_SOURCE);
+                    }
+                }
+
+                return true;
+            }
+        );
+
+        return result;
+    }
+}
@@ -0,0 +1,147 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.utils;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the IDE project model of a project ({@code .idea} directory and {@code .iml} files) in
+ * the system directory of the IDE between runs, so that analysed checkouts are left as they
+ * were. The stored model is copied into the project folder before the project is opened and
+ * moved back after the run. Model files which the project folder had before the first run are
+ * never stored nor removed.
+ */
+public final class ProjectModelStorage {
+    private static final @NotNull String DIRECTORY_NAME = "movemethodgen-models";
+
+    private static final @NotNull String IDEA_DIRECTORY_NAME = ".idea";
+
+    private static final @NotNull String MODULE_FILE_EXTENSION = ".iml";
+
+    /**
+     * Model files which project folders had on their own, by absolute paths of the folders.
+     */
+    private static final @NotNull Map<Path, Set<Path>> OWN_MODEL_FILES = new ConcurrentHashMap<>();
+
+    private ProjectModelStorage() {
+    }
+
+    /**
+     * Copies the stored model into the given project folder. Files which are already there are
+     * not replaced.
+     */
+    public static void restore(final @NotNull Path projectDir) throws IOException {
+        Path normalizedDir = normalize(projectDir);
+        OWN_MODEL_FILES.put(normalizedDir, findModelFiles(normalizedDir));
+
+        Path storage = storageOf(normalizedDir);
+        if (!Files.isDirectory(storage)) {
+            return;
+        }
+
+        for (Path file : findModelFiles(storage)) {
+            Path target = normalizedDir.resolve(file.toString());
+            if (!Files.exists(target)) {
+                FileUtil.copyFileOrDir(storage.resolve(file).toFile(), target.toFile());
+            }
+        }
+    }
+
+    /**
+     * Replaces the stored model with model files of the given project folder and removes them
+     * from the folder, except for the ones it had before {@link #restore}.
+     */
+    public static void store(final @NotNull Path projectDir) throws IOException {
+        Path normalizedDir = normalize(projectDir);
+        Set<Path> ownFiles = OWN_MODEL_FILES.getOrDefault(normalizedDir, Collections.emptySet());
+
+        Path storage = storageOf(normalizedDir);
+        FileUtil.delete(storage.toFile());
+
+        for (Path file : findModelFiles(normalizedDir)) {
+            if (ownFiles.contains(file)) {
+                continue;
+            }
+
+            Path source = normalizedDir.resolve(file);
+            FileUtil.copyFileOrDir(source.toFile(), storage.resolve(file.toString()).toFile());
+            FileUtil.delete(source.toFile());
+        }
+    }
+
+    /**
+     * Tells whether the given path relative to a project folder belongs to the IDE project model.
+     */
+    public static boolean isModelFile(final @NotNull Path relativePath) {
+        Path firstName = relativePath.getNameCount() == 0 ? null : relativePath.getName(0);
+        Path fileName = relativePath.getFileName();
+
+        return firstName != null && firstName.toString().equals(IDEA_DIRECTORY_NAME) ||
+               fileName != null && fileName.toString().endsWith(MODULE_FILE_EXTENSION);
+    }
+
+    /**
+     * Returns paths relative to the given folder of its {@code .idea} directory and all its
+     * {@code .iml} files.
+     */
+    private static @NotNull Set<Path> findModelFiles(final @NotNull Path dir) throws IOException {
+        Set<Path> result = new HashSet<>();
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(
+                final @NotNull Path subdirectory,
+                final @NotNull BasicFileAttributes attributes
+            ) {
+                if (subdirectory.equals(dir)) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                String name = subdirectory.getFileName().toString();
+                if (name.equals(IDEA_DIRECTORY_NAME) && subdirectory.getParent().equals(dir)) {
+                    result.add(dir.relativize(subdirectory));
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                return name.equals(".git") ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final @NotNull Path file, final @NotNull BasicFileAttributes attributes) {
+                if (file.getFileName().toString().endsWith(MODULE_FILE_EXTENSION)) {
+                    result.add(dir.relativize(file));
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return result;
+    }
+
+    private static @NotNull Path normalize(final @NotNull Path projectDir) {
+        return projectDir.toAbsolutePath().normalize();
+    }
+
+    private static @NotNull Path storageOf(final @NotNull Path projectDir) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        digest.update(projectDir.toString().getBytes(StandardCharsets.UTF_8));
+
+        return Paths.get(PathManager.getSystemPath(), DIRECTORY_NAME, StringUtil.toHexString(digest.digest()));
+    }
+}
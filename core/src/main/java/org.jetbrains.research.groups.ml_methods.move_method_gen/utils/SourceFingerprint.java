@@ -0,0 +1,111 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.utils;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Fingerprint of files of a project made of their relative paths, sizes and modification times.
+ * Fingerprint of a project is stored in the system directory of the IDE when a run finishes, so
+ * that the next run can tell whether files were changed in between without refreshing VFS.
+ * The {@code .git} directory and files of the IDE project model (see
+ * {@link ProjectModelStorage#isModelFile}) are not taken into account, since they change
+ * without changes of sources.
+ */
+public final class SourceFingerprint {
+    private static final @NotNull String DIRECTORY_NAME = "movemethodgen-fingerprints";
+
+    private SourceFingerprint() {
+    }
+
+    public static @NotNull String compute(final @NotNull Path projectDir) throws IOException {
+        List<String> entries = new ArrayList<>();
+        Files.walkFileTree(projectDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(
+                final @NotNull Path dir,
+                final @NotNull BasicFileAttributes attributes
+            ) {
+                String name = dir.getFileName() == null ? "" : dir.getFileName().toString();
+                if (!dir.equals(projectDir) && (name.equals(".git") || name.equals(".idea"))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final @NotNull Path file, final @NotNull BasicFileAttributes attributes) {
+                if (ProjectModelStorage.isModelFile(projectDir.relativize(file))) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                entries.add(
+                    projectDir.relativize(file) + "\0" + attributes.size() + "\0" +
+                    attributes.lastModifiedTime().toMillis()
+                );
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        Collections.sort(entries);
+
+        MessageDigest digest = newDigest();
+        for (String entry : entries) {
+            digest.update((entry + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        return StringUtil.toHexString(digest.digest());
+    }
+
+    /**
+     * Reads the stored fingerprint of the given project and removes it, so that a run which
+     * doesn't finish makes the next run refresh VFS.
+     *
+     * @return stored fingerprint or {@code null} if there is none.
+     */
+    public static @Nullable String takeStored(final @NotNull Path projectDir) throws IOException {
+        Path file = storageOf(projectDir);
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        String fingerprint = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+        Files.delete(file);
+
+        return fingerprint;
+    }
+
+    public static void store(final @NotNull Path projectDir, final @NotNull String fingerprint) throws IOException {
+        Path file = storageOf(projectDir);
+        Files.createDirectories(file.getParent());
+        Files.write(file, fingerprint.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static @NotNull Path storageOf(final @NotNull Path projectDir) {
+        MessageDigest digest = newDigest();
+        digest.update(projectDir.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+
+        return Paths.get(PathManager.getSystemPath(), DIRECTORY_NAME, StringUtil.toHexString(digest.digest()));
+    }
+
+    private static @NotNull MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.utils;
+
+import com.intellij.psi.JavaRecursiveElementWalkingVisitor;
+import com.intellij.psi.PsiElement;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Recursive visitor which can abort the walk as soon as the answer is known. Unlike
+ * {@link com.intellij.psi.JavaRecursiveElementVisitor} it doesn't use recursion, so deep trees
+ * can't overflow the stack.
+ */
+public abstract class StoppableJavaElementVisitor extends JavaRecursiveElementWalkingVisitor {
+    private boolean isStopped = false;
+
+    /**
+     * Visits the given element and all of its descendants until {@link #stop} is called.
+     *
+     * @return {@code true} if the whole subtree was visited.
+     */
+    public boolean walk(final @NotNull PsiElement root) {
+        root.accept(this);
+        return !isStopped;
+    }
+
+    /**
+     * Stops the walk. No elements are visited after the current one.
+     */
+    protected void stop() {
+        isStopped = true;
+        stopWalking();
+    }
+
+    public boolean isStopped() {
+        return isStopped;
+    }
+}
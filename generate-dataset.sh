@@ -1,11 +1,11 @@
 #!/usr/bin/env bash
 
-if [ $# -ne "2" ]; then
-    echo "usage: generate-dataset <path to project> <path to output folder>"
+if [ $# -lt "2" ]; then
+    echo "usage: generate-dataset <path to project> <path to output folder> [-P<option>=<value>...]"
     exit 1
 fi
 
 DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" >/dev/null && pwd )" # from https://stackoverflow.com/a/246128
 
-$DIR/gradlew --console=plain -p $DIR runGeneration -PprojectFolder="$PWD/$1" -PoutputDir="$PWD/$2"
+$DIR/gradlew --console=plain -p $DIR runGeneration -PprojectFolder="$PWD/$1" -PoutputDir="$PWD/$2" "${@:3}"
 
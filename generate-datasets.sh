@@ -0,0 +1,10 @@
+#!/usr/bin/env bash
+
+if [ $# -lt "1" ]; then
+    echo "usage: generate-datasets <path to manifest> [-P<option>=<value>...]"
+    exit 1
+fi
+
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" >/dev/null && pwd )" # from https://stackoverflow.com/a/246128
+
+$DIR/gradlew --console=plain -p $DIR runBatchGeneration -Pmanifest="$PWD/$1" "${@:2}"
@@ -1,23 +1,31 @@
 package org.jetbrains.research.groups.ml_methods.move_method_gen.mover;
 
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.command.CommandProcessor;
 import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.Ref;
 import com.intellij.psi.*;
-import com.intellij.psi.impl.PsiElementFactoryImpl;
+import com.intellij.psi.util.InheritanceUtil;
 import com.intellij.refactoring.move.moveInstanceMethod.MoveInstanceMethodHandler;
 import com.intellij.refactoring.move.moveInstanceMethod.MoveInstanceMethodProcessor;
 import com.intellij.refactoring.rename.RenameProcessor;
 import org.apache.log4j.ConsoleAppender;
 import org.apache.log4j.PatternLayout;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.AccessorsMap;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.CsvSerializer;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.Dataset;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.ProjectAppStarter;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.analysis.InheritanceIndex;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.ExtractingUtils;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.MethodUtils;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.PhaseTimings;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -29,6 +37,12 @@ import static org.jetbrains.research.groups.ml_methods.move_method_gen.ClassUtil
 import static org.jetbrains.research.groups.ml_methods.move_method_gen.utils.MethodUtils.fullyQualifiedName;
 
 public class AppStarter extends ProjectAppStarter {
+    private static final @NotNull String BATCHED_PROPERTY = "movemethodgen.mover.batched";
+
+    private static final @NotNull String SELECTION_PROPERTY = "movemethodgen.mover.selection";
+
+    private static final @NotNull String SEED_PROPERTY = "movemethodgen.mover.seed";
+
     private Path csvFilesDir;
 
     @Override
@@ -51,101 +65,383 @@ public class AppStarter extends ProjectAppStarter {
 
     @Override
     protected void run(@NotNull Project project) throws Exception {
-        Dataset dataset = CsvSerializer.getInstance().deserialize(project, csvFilesDir);
-        int potentialMoves = dataset.getMethods().stream().mapToInt(it -> it.getIdsOfPossibleTargets().length).sum();
+        PhaseTimings timings = PhaseTimings.getInstance(project);
+        MoveJournal journal = new MoveJournal(csvFilesDir);
+
+        List<MethodToMove> methodsToMove;
+        if (journal.hasCheckpoint()) {
+            methodsToMove = timings.compute("checkpoint resume", () -> journal.resume(project));
+            log.info("Resuming from checkpoint, " + methodsToMove.size() + " moves left");
+        } else {
+            Dataset dataset = timings.compute(
+                "dataset deserialization",
+                () -> CsvSerializer.getInstance().deserialize(project, csvFilesDir)
+            );
+            int potentialMoves = dataset.getMethods().stream().mapToInt(it -> it.getIdsOfPossibleTargets().length).sum();
+            log.info(potentialMoves + " potential moves found");
+
+            methodsToMove = timings.compute("moves selection", () -> selectMoves(project, dataset));
+            journal.start(project, methodsToMove);
+        }
+
+        MovedMethodList movedMethods = new MovedMethodList();
+        if (Boolean.getBoolean(BATCHED_PROPERTY)) {
+            moveInBatch(project, methodsToMove, journal, movedMethods);
+        } else {
+            moveOneByOne(project, methodsToMove, journal, movedMethods);
+        }
+
+        journal.finish(project);
+
+        log.info(movedMethods.getList().size() + " moves performed");
+    }
 
+    @Override
+    protected @NotNull Path getOutputDir() {
+        return csvFilesDir;
+    }
+
+    /**
+     * Output directory of the mover is the dataset directory, which already has timings of
+     * the generation.
+     */
+    @Override
+    protected @NotNull String getTimingsFileName() {
+        return "mover-timings.json";
+    }
+
+    /**
+     * Chooses moves of methods which are not a part of a hierarchy such that every class takes
+     * part in at most one move.
+     */
+    private @NotNull List<MethodToMove> selectMoves(final @NotNull Project project, final @NotNull Dataset dataset) {
         List<SmartPsiElementPointer<PsiClass>> classes = dataset.getClasses();
         List<Dataset.Method> methods = dataset.getMethods();
 
-        List<MethodToMove> methodsToMove = new ArrayList<>();
+        List<MoveSelector.Candidate> candidates = new ArrayList<>();
         ApplicationManager.getApplication().runReadAction(() -> {
-            Set<PsiClass> usedClasses = new HashSet<>();
+            InheritanceIndex inheritanceIndex = new InheritanceIndex(ExtractingUtils.extractAllJavaFiles(project));
 
-            int methodId = 0;
-            for (Dataset.Method method : dataset.getMethods()) {
+            for (int methodId = 0; methodId < methods.size(); methodId++) {
+                Dataset.Method method = methods.get(methodId);
                 PsiMethod psiMethod = method.getPsiMethod().getElement();
-                if (usedClasses.contains(psiMethod.getContainingClass())) {
-                    ++methodId;
+
+                if (inheritanceIndex.isOverridden(psiMethod) || inheritanceIndex.hasSuperMethods(psiMethod)) {
+                    log.warn("Method " + fullyQualifiedName(psiMethod) + " is a part of a hierarchy and won't be moved");
                     continue;
                 }
 
-                int targetId = -1;
-                for (int possibleTargetId : method.getIdsOfPossibleTargets()) {
-                    PsiClass targetClass = classes.get(possibleTargetId).getElement();
-                    if (!usedClasses.contains(targetClass)) {
-                        targetId = possibleTargetId;
-                        break;
-                    }
+                for (int targetId : method.getIdsOfPossibleTargets()) {
+                    candidates.add(new MoveSelector.Candidate(methodId, method.getIdOfContainingClass(), targetId));
                 }
+            }
+        });
 
-                if (targetId != -1) {
-                    usedClasses.add(psiMethod.getContainingClass());
-                    usedClasses.add(classes.get(targetId).getElement());
-                    methodsToMove.add(new MethodToMove(methodId, targetId));
-                }
+        String seed = System.getProperty(SEED_PROPERTY);
+        MoveSelector selector = new MoveSelector(
+            MoveSelector.Strategy.valueOf(System.getProperty(SELECTION_PROPERTY, "greedy").toUpperCase()),
+            seed == null ? null : Long.parseLong(seed)
+        );
+
+        List<MethodToMove> methodsToMove = new ArrayList<>();
+        for (MoveSelector.Candidate candidate : selector.select(candidates)) {
+            methodsToMove.add(
+                new MethodToMove(
+                    candidate.getMethodId(),
+                    candidate.getSourceClassId(),
+                    candidate.getTargetClassId(),
+                    methods.get(candidate.getMethodId()).getPsiMethod(),
+                    classes.get(candidate.getTargetClassId())
+                )
+            );
+        }
+
+        log.info(methodsToMove.size() + " non-conflicting moves selected from " + candidates.size() + " candidates");
+
+        return methodsToMove;
+    }
+
+    /**
+     * Rewrites, moves and post-rewrites methods one by one. Every move waits for smart mode. A
+     * failed move is rejected and all changes it made are reverted. Every move is written into
+     * the journal before documents are saved, so that a move whose code was saved is never
+     * forgotten, then checkpoint is updated.
+     */
+    private void moveOneByOne(
+        final @NotNull Project project,
+        final @NotNull List<MethodToMove> methodsToMove,
+        final @NotNull MoveJournal journal,
+        final @NotNull MovedMethodList movedMethods
+    ) throws IOException {
+        // Every unsaved change afterwards is made by the current move
+        saveDocuments();
+
+        moveOneByOne(project, methodsToMove, methodsToMove.size(), journal, movedMethods);
+    }
+
+    /**
+     * Moves the given number of first methods one by one. All documents must be saved. Methods
+     * after them are kept in the checkpoint.
+     */
+    private void moveOneByOne(
+        final @NotNull Project project,
+        final @NotNull List<MethodToMove> methodsToMove,
+        final int count,
+        final @NotNull MoveJournal journal,
+        final @NotNull MovedMethodList movedMethods
+    ) throws IOException {
+        for (int i = 0; i < count; i++) {
+            MethodToMove methodToMove = methodsToMove.get(i);
+
+            Exception failure = null;
+            try {
+                SmartPsiElementPointer<PsiMethod> movedMethod = moveCompletely(project, methodToMove);
+                movedMethods.addMethod(movedMethod, methodToMove.getMethodId(), methodToMove.getOriginalClassId(), methodToMove.getTargetClassId());
+            } catch (Exception e) {
+                failure = e;
+                revertUnsavedChanges(project);
+            }
 
-                ++methodId;
+            if (failure == null) {
+                journal.moved(movedMethods.getList().get(movedMethods.getList().size() - 1));
+            } else {
+                journal.reject(methodToMove, failure);
             }
-        });
 
-        MovedMethodList movedMethods = new MovedMethodList();
+            PhaseTimings.getInstance(project).measure("save documents", this::saveDocuments);
 
-        for (MethodToMove methodToMove : methodsToMove) {
-            Ref<Exception> exceptionRef = new Ref<>(null);
+            List<MethodToMove> methodsLeft = methodsToMove.subList(i + 1, methodsToMove.size());
+            PhaseTimings.getInstance(project).measure("checkpoint", () -> journal.checkpoint(project, methodsLeft));
+        }
+    }
+
+    private @NotNull SmartPsiElementPointer<PsiMethod> moveCompletely(
+        final @NotNull Project project,
+        final @NotNull MethodToMove methodToMove
+    ) throws Exception {
+        PhaseTimings timings = PhaseTimings.getInstance(project);
+
+        Ref<Exception> exceptionRef = new Ref<>(null);
+        timings.measure("move: rewrite", () ->
             WriteCommandAction.runWriteCommandAction(project, () -> {
                 try {
-                    MethodRewriter.getInstance().rewriteMethod(methods.get(methodToMove.getMethodId()).getPsiMethod());
+                    MethodRewriter.getInstance().rewriteMethod(methodToMove.getMethod());
                 } catch (Exception e) {
                     exceptionRef.set(e);
                 }
-            });
+            })
+        );
 
-            if (!exceptionRef.isNull()) {
-                throw exceptionRef.get();
-            }
+        if (!exceptionRef.isNull()) {
+            throw exceptionRef.get();
+        }
 
+        Ref<SmartPsiElementPointer<PsiMethod>> movedMethod = new Ref<>(null);
+        timings.measure("move: move", () ->
             DumbService.getInstance(project).runWhenSmart(
                 () -> {
                     try {
-                        int methodId = methodToMove.getMethodId();
-                        int targetClassId = methodToMove.getTargetClassId();
-                        SmartPsiElementPointer<PsiClass> targetClass = classes.get(targetClassId);
-                        SmartPsiElementPointer<PsiMethod> psiMethod = methods.get(methodToMove.getMethodId()).getPsiMethod();
-
-                        SmartPsiElementPointer<PsiMethod> movedMethod = moveMethod(project, psiMethod, targetClass);
-                        movedMethods.addMethod(movedMethod, methodId, methods.get(methodId).getIdOfContainingClass(), targetClassId);
+                        movedMethod.set(moveMethod(project, methodToMove.getMethod(), methodToMove.getTargetClass()));
                     } catch (Exception e) {
                         exceptionRef.set(e);
                     }
                 }
-            );
+            )
+        );
 
-            if (!exceptionRef.isNull()) {
-                throw exceptionRef.get();
-            }
+        if (!exceptionRef.isNull()) {
+            throw exceptionRef.get();
+        }
 
+        timings.measure("move: post-rewrite", () ->
             WriteCommandAction.runWriteCommandAction(project, () -> {
                 try {
-                    MethodRewriter.getInstance().postRewriteMethod(movedMethods.getList().get(movedMethods.getList().size() - 1).getMethod());
+                    MethodRewriter.getInstance().postRewriteMethod(movedMethod.get());
                 } catch (Exception e) {
                     exceptionRef.set(e);
                 }
-            });
+            })
+        );
 
-            if (!exceptionRef.isNull()) {
-                throw exceptionRef.get();
+        if (!exceptionRef.isNull()) {
+            throw exceptionRef.get();
+        }
+
+        return movedMethod.get();
+    }
+
+    /**
+     * Produces the same code and the same journal as {@link #moveOneByOne}, but rewrites, moves
+     * and post-rewrites groups of methods with a single command and a single wait for smart mode
+     * per step. A group is the longest run of consecutive moves which don't affect each other
+     * (see {@link MoveFootprint}), so their order doesn't matter and groups are done in the order
+     * of moves. If some move of a group fails, all changes of the group are reverted and its
+     * moves are done one by one, so that failed moves are rejected and reverted exactly like in
+     * the default mode. Documents are saved and checkpoint is updated once per group.
+     */
+    private void moveInBatch(
+        final @NotNull Project project,
+        final @NotNull List<MethodToMove> methodsToMove,
+        final @NotNull MoveJournal journal,
+        final @NotNull MovedMethodList movedMethods
+    ) throws IOException {
+        PhaseTimings timings = PhaseTimings.getInstance(project);
+
+        // Every unsaved change afterwards is made by the current group
+        saveDocuments();
+
+        List<MethodToMove> remaining = methodsToMove;
+        while (!remaining.isEmpty()) {
+            List<MethodToMove> methodsLeft = remaining;
+            int groupSize = timings.compute("batch: grouping", () -> independentPrefixSize(methodsLeft));
+            List<MethodToMove> group = remaining.subList(0, groupSize);
+            List<MethodToMove> later = remaining.subList(groupSize, remaining.size());
+
+            if (moveGroup(project, group, journal, movedMethods)) {
+                timings.measure("save documents", this::saveDocuments);
+                timings.measure("checkpoint", () -> journal.checkpoint(project, later));
+
+                remaining = later;
+                continue;
             }
+
+            revertUnsavedChanges(project);
+
+            // Moved methods lost their pointers, they are found again at locations from the checkpoint
+            Set<Integer> groupIds = group.stream().map(MethodToMove::getMethodId).collect(Collectors.toSet());
+            remaining = timings.compute("checkpoint resume", () -> journal.resume(project));
+
+            int count = 0;
+            while (count < remaining.size() && groupIds.contains(remaining.get(count).getMethodId())) {
+                count++;
+            }
+
+            moveOneByOne(project, remaining, count, journal, movedMethods);
+            remaining = remaining.subList(count, remaining.size());
+        }
+    }
+
+    /**
+     * Rewrites all given methods in a single command, then moves all of them after a single wait
+     * for smart mode, then post-rewrites all of them in a single command. Moves are written into
+     * the journal only if all of them succeeded.
+     *
+     * @return {@code true} if all methods were moved.
+     */
+    private boolean moveGroup(
+        final @NotNull Project project,
+        final @NotNull List<MethodToMove> methodsToMove,
+        final @NotNull MoveJournal journal,
+        final @NotNull MovedMethodList movedMethods
+    ) throws IOException {
+        PhaseTimings timings = PhaseTimings.getInstance(project);
+
+        Ref<Exception> exceptionRef = new Ref<>(null);
+        timings.measure("batch: rewrite", () ->
+            WriteCommandAction.runWriteCommandAction(project, () -> {
+                try {
+                    for (MethodToMove methodToMove : methodsToMove) {
+                        MethodRewriter.getInstance().rewriteMethod(methodToMove.getMethod());
+                    }
+                } catch (Exception e) {
+                    exceptionRef.set(e);
+                }
+            })
+        );
+
+        if (!exceptionRef.isNull()) {
+            return false;
         }
 
-        MovedMethodSerializer.getInstance().serialize(movedMethods, csvFilesDir);
+        List<SmartPsiElementPointer<PsiMethod>> moved = new ArrayList<>();
+        timings.measure("batch: move", () ->
+            DumbService.getInstance(project).runWhenSmart(
+                () -> CommandProcessor.getInstance().executeCommand(
+                    project,
+                    () -> {
+                        try {
+                            for (MethodToMove methodToMove : methodsToMove) {
+                                moved.add(moveMethod(project, methodToMove.getMethod(), methodToMove.getTargetClass()));
+                            }
+                        } catch (Exception e) {
+                            exceptionRef.set(e);
+                        }
+                    },
+                    "Move methods",
+                    null
+                )
+            )
+        );
+
+        if (!exceptionRef.isNull()) {
+            return false;
+        }
 
-        log.info(potentialMoves + " potential moves found");
-        log.info(movedMethods.getList().size() + " moves performed");
+        timings.measure("batch: post-rewrite", () ->
+            WriteCommandAction.runWriteCommandAction(project, () -> {
+                try {
+                    for (SmartPsiElementPointer<PsiMethod> method : moved) {
+                        MethodRewriter.getInstance().postRewriteMethod(method);
+                    }
+                } catch (Exception e) {
+                    exceptionRef.set(e);
+                }
+            })
+        );
+
+        if (!exceptionRef.isNull()) {
+            return false;
+        }
+
+        for (int i = 0; i < methodsToMove.size(); i++) {
+            MethodToMove methodToMove = methodsToMove.get(i);
+
+            movedMethods.addMethod(moved.get(i), methodToMove.getMethodId(), methodToMove.getOriginalClassId(), methodToMove.getTargetClassId());
+            journal.moved(movedMethods.getList().get(movedMethods.getList().size() - 1));
+        }
+
+        return true;
     }
 
-    @Override
-    protected @NotNull Path getOutputDir() {
-        return csvFilesDir;
+    /**
+     * Returns the number of first moves which don't affect each other. It is at least one.
+     */
+    private int independentPrefixSize(final @NotNull List<MethodToMove> methodsToMove) {
+        return ApplicationManager.getApplication().runReadAction(
+            (Computable<Integer>) () -> {
+                List<MoveFootprint> footprints = new ArrayList<>();
+                for (MethodToMove methodToMove : methodsToMove) {
+                    MoveFootprint footprint = new MoveFootprint(methodToMove);
+                    if (!footprints.isEmpty() && footprints.stream().anyMatch(footprint::interferesWith)) {
+                        break;
+                    }
+
+                    footprints.add(footprint);
+                }
+
+                return footprints.size();
+            }
+        );
+    }
+
+    /**
+     * Reloads from disk all documents changed since they were saved last time, so that a failed
+     * move is reverted completely: wherever the method is now, and together with call sites
+     * changed by renaming or by the move itself. Smart pointers to unchanged elements stay valid.
+     */
+    private void revertUnsavedChanges(final @NotNull Project project) {
+        ApplicationManager.getApplication().invokeAndWait(() -> {
+            FileDocumentManager documentManager = FileDocumentManager.getInstance();
+            for (Document document : documentManager.getUnsavedDocuments()) {
+                documentManager.reloadFromDisk(document);
+            }
+
+            PsiDocumentManager.getInstance(project).commitAllDocuments();
+        });
+    }
+
+    private void saveDocuments() {
+        ApplicationManager.getApplication().invokeAndWait(() -> FileDocumentManager.getInstance().saveAllDocuments());
     }
 
     private void renameMethod(
@@ -230,4 +526,71 @@ public class AppStarter extends ProjectAppStarter {
 
         return SmartPointerManager.getInstance(project).createSmartPsiElementPointer(candidates.get(0));
     }
+
+    /**
+     * Everything a move reads or changes outside of the moved method. Pre-rewrite of a method
+     * changes only the method and reads members of its class including inherited ones. Move
+     * reads members of the target class, adds the method there, removes it from its class and
+     * rewrites its call sites, possibly after renaming. Therefore two moves interfere if one of
+     * them calls the method of the other, or if a class one of them changes is the class or
+     * the target of the other or a supertype of them. Moves which don't interfere give the same
+     * code in any order.
+     */
+    private static class MoveFootprint {
+        private final @Nullable PsiMethod method;
+
+        private final @NotNull Set<PsiMethod> calledMethods = new HashSet<>();
+
+        private final @NotNull Set<PsiClass> changedClasses = new HashSet<>();
+
+        private final @NotNull Set<PsiClass> readClasses = new HashSet<>();
+
+        /**
+         * Must be created inside of a read action.
+         */
+        private MoveFootprint(final @NotNull MethodToMove methodToMove) {
+            method = methodToMove.getMethod().getElement();
+            PsiClass targetClass = methodToMove.getTargetClass().getElement();
+            if (method == null || targetClass == null) {
+                return;
+            }
+
+            new JavaRecursiveElementWalkingVisitor() {
+                @Override
+                public void visitReferenceExpression(final @NotNull PsiReferenceExpression expression) {
+                    super.visitReferenceExpression(expression);
+
+                    PsiElement target = expression.resolve();
+                    if (target instanceof PsiMethod) {
+                        calledMethods.add((PsiMethod) target);
+                    }
+                }
+            }.visitElement(method);
+
+            for (PsiClass aClass : Arrays.asList(method.getContainingClass(), targetClass)) {
+                if (aClass == null) {
+                    continue;
+                }
+
+                changedClasses.add(aClass);
+                readClasses.add(aClass);
+                readClasses.addAll(InheritanceUtil.getSuperClasses(aClass));
+            }
+        }
+
+        /**
+         * Moves whose method or target is lost interfere with everything, so that they are
+         * done on their own.
+         */
+        private boolean interferesWith(final @NotNull MoveFootprint other) {
+            if (method == null || other.method == null || changedClasses.isEmpty() || other.changedClasses.isEmpty()) {
+                return true;
+            }
+
+            return calledMethods.contains(other.method) ||
+                   other.calledMethods.contains(method) ||
+                   !Collections.disjoint(changedClasses, other.readClasses) ||
+                   !Collections.disjoint(other.changedClasses, readClasses);
+        }
+    }
 }
@@ -4,10 +4,10 @@ import com.intellij.psi.*;
 import com.intellij.psi.impl.PsiElementFactoryImpl;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.AccessorsMap;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.analysis.ClassMemberCache;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.MethodUtils;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class MethodRewriter {
     private static final @NotNull MethodRewriter INSTANCE = new MethodRewriter();
@@ -35,9 +35,7 @@ public class MethodRewriter {
             throw new IllegalStateException("Failed to restore method from Smart Pointer: " + method);
         }
 
-        AccessorsMap accessorsMap = new AccessorsMap(
-            Arrays.stream(psiMethod.getContainingClass().getAllMethods()).collect(Collectors.toList())
-        );
+        AccessorsMap accessorsMap = ClassMemberCache.getInstance(method.getProject()).getAccessorsMap(psiMethod.getContainingClass());
 
         List<PsiReferenceExpression> allReferenceExpressions = new ArrayList<>();
 
@@ -115,7 +113,7 @@ public class MethodRewriter {
             throw new IllegalStateException("Failed to restore method from Smart Pointer: " + method);
         }
 
-        Set<PsiMethod> classMethods = Arrays.stream(psiMethod.getContainingClass().getAllMethods()).collect(Collectors.toSet());
+        Set<PsiMethod> classMethods = ClassMemberCache.getInstance(method.getProject()).getAllMethods(psiMethod.getContainingClass());
         List<PsiReferenceExpression> methodCalls = new ArrayList<>();
         new JavaRecursiveElementVisitor() {
             @Override
@@ -1,20 +1,52 @@
 package org.jetbrains.research.groups.ml_methods.move_method_gen.mover;
 
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.SmartPsiElementPointer;
+import org.jetbrains.annotations.NotNull;
+
 public class MethodToMove {
     private final int methodId;
 
+    private final int originalClassId;
+
     private final int targetClassId;
 
-    public MethodToMove(final int methodId, final int targetClassId) {
+    private final @NotNull SmartPsiElementPointer<PsiMethod> method;
+
+    private final @NotNull SmartPsiElementPointer<PsiClass> targetClass;
+
+    public MethodToMove(
+        final int methodId,
+        final int originalClassId,
+        final int targetClassId,
+        final @NotNull SmartPsiElementPointer<PsiMethod> method,
+        final @NotNull SmartPsiElementPointer<PsiClass> targetClass
+    ) {
         this.methodId = methodId;
+        this.originalClassId = originalClassId;
         this.targetClassId = targetClassId;
+        this.method = method;
+        this.targetClass = targetClass;
     }
 
     public int getMethodId() {
         return methodId;
     }
 
+    public int getOriginalClassId() {
+        return originalClassId;
+    }
+
     public int getTargetClassId() {
         return targetClassId;
     }
+
+    public @NotNull SmartPsiElementPointer<PsiMethod> getMethod() {
+        return method;
+    }
+
+    public @NotNull SmartPsiElementPointer<PsiClass> getTargetClass() {
+        return targetClass;
+    }
 }
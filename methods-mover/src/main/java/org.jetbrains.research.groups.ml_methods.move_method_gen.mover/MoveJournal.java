@@ -0,0 +1,234 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.mover;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.Ref;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.SmartPointerManager;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.ProjectAppStarter;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.MethodUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+import static org.jetbrains.research.groups.ml_methods.move_method_gen.utils.JavaFileUtils.*;
+
+/**
+ * Durable record of progress of the mover. Every performed move is appended to
+ * {@code moved-methods.csv} and every failed one to {@code rejected-moves.csv} as soon as it is
+ * done. Moves which are not done yet are kept in {@code mover-checkpoint.csv} together with the
+ * current locations of methods and targets, so that an interrupted run can be resumed. All
+ * files are synced to disk before methods return.
+ */
+public class MoveJournal {
+    private static final @NotNull String CHECKPOINT_FILE_NAME = "mover-checkpoint.csv";
+
+    private static final @NotNull String REJECTS_FILE_NAME = "rejected-moves.csv";
+
+    private static final @NotNull CSVFormat CHECKPOINT_FILE_FORMAT = CSVFormat.RFC4180.withHeader(
+        "id", "name", "file", "offset", "original_class_id", "target_class_id", "target_name", "target_file", "target_offset"
+    );
+
+    private static final @NotNull CSVFormat REJECTS_FILE_FORMAT = CSVFormat.RFC4180.withHeader(
+        "id", "name", "original_class_id", "target_class_id", "reason"
+    );
+
+    private final @NotNull Path dir;
+
+    public MoveJournal(final @NotNull Path dir) {
+        this.dir = dir;
+    }
+
+    public boolean hasCheckpoint() {
+        return Files.exists(dir.resolve(CHECKPOINT_FILE_NAME));
+    }
+
+    /**
+     * Starts a new run. Fails if {@code moved-methods.csv} already exists.
+     */
+    public void start(final @NotNull Project project, final @NotNull List<MethodToMove> methodsToMove) throws IOException {
+        MovedMethodSerializer.getInstance().create(dir);
+        checkpoint(project, methodsToMove);
+    }
+
+    /**
+     * Restores moves which were not done by an interrupted run. Moves which were done and saved
+     * after the last checkpoint are skipped. A move is written into the journal before its code
+     * is saved, so a recorded move whose code wasn't saved is forgotten and done again. Moves
+     * whose method or target can't be found anymore are rejected.
+     */
+    public @NotNull List<MethodToMove> resume(final @NotNull Project project) throws IOException {
+        List<CSVRecord> records;
+        try (BufferedReader reader = Files.newBufferedReader(dir.resolve(CHECKPOINT_FILE_NAME))) {
+            records = CHECKPOINT_FILE_FORMAT.withSkipHeaderRecord().parse(reader).getRecords();
+        }
+
+        Set<Integer> movedIds = MovedMethodSerializer.getInstance().retainSavedMethods(project, dir);
+
+        List<MethodToMove> methodsToMove = new ArrayList<>();
+        for (CSVRecord record : records) {
+            int methodId = Integer.parseInt(record.get("id"));
+            int originalClassId = Integer.parseInt(record.get("original_class_id"));
+            int targetClassId = Integer.parseInt(record.get("target_class_id"));
+
+            if (movedIds.contains(methodId)) {
+                continue;
+            }
+
+            MethodToMove methodToMove = ApplicationManager.getApplication().runReadAction(
+                (Computable<MethodToMove>) () -> {
+                    Optional<PsiMethod> method = getFileByPath(project, record.get("file"), false)
+                        .flatMap(it -> getMethodByLocation(it, record.get("name"), Integer.parseInt(record.get("offset"))));
+
+                    Optional<PsiClass> targetClass = getFileByPath(project, record.get("target_file"), false)
+                        .flatMap(it -> getClassByLocation(it, record.get("target_name"), Integer.parseInt(record.get("target_offset"))));
+
+                    if (!method.isPresent() || !targetClass.isPresent()) {
+                        return null;
+                    }
+
+                    SmartPointerManager pointerManager = SmartPointerManager.getInstance(project);
+                    return new MethodToMove(
+                        methodId,
+                        originalClassId,
+                        targetClassId,
+                        pointerManager.createSmartPsiElementPointer(method.get()),
+                        pointerManager.createSmartPsiElementPointer(targetClass.get())
+                    );
+                }
+            );
+
+            if (methodToMove == null) {
+                reject(methodId, record.get("name"), originalClassId, targetClassId, "Method or target is not found at the checkpointed location");
+            } else {
+                methodsToMove.add(methodToMove);
+            }
+        }
+
+        return methodsToMove;
+    }
+
+    /**
+     * Replaces the checkpoint with the given list of moves which are not done yet.
+     */
+    public void checkpoint(final @NotNull Project project, final @NotNull List<MethodToMove> remaining) throws IOException {
+        Path file = dir.resolve(CHECKPOINT_FILE_NAME);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        Ref<IOException> exceptionRef = new Ref<>(null);
+        ApplicationManager.getApplication().runReadAction(() -> {
+            try (
+                FileOutputStream stream = new FileOutputStream(tmp.toFile());
+                Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+                CSVPrinter csvPrinter = new CSVPrinter(writer, CHECKPOINT_FILE_FORMAT)
+            ) {
+                for (MethodToMove methodToMove : remaining) {
+                    PsiMethod method = methodToMove.getMethod().getElement();
+                    PsiClass targetClass = methodToMove.getTargetClass().getElement();
+                    if (method == null || targetClass == null) {
+                        continue;
+                    }
+
+                    csvPrinter.printRecord(
+                        methodToMove.getMethodId(),
+                        MethodUtils.fullyQualifiedName(method),
+                        getPathToContainingFile(method),
+                        method.getNode().getStartOffset(),
+                        methodToMove.getOriginalClassId(),
+                        methodToMove.getTargetClassId(),
+                        targetClass.getQualifiedName(),
+                        getPathToContainingFile(targetClass),
+                        targetClass.getNode().getStartOffset()
+                    );
+                }
+
+                csvPrinter.flush();
+                stream.getFD().sync();
+            } catch (IOException e) {
+                exceptionRef.set(e);
+            }
+        });
+
+        if (!exceptionRef.isNull()) {
+            throw exceptionRef.get();
+        }
+
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void moved(final @NotNull MovedMethodList.Method method) throws IOException {
+        MovedMethodSerializer.getInstance().append(method, dir);
+    }
+
+    public void reject(final @NotNull MethodToMove methodToMove, final @NotNull Exception reason) throws IOException {
+        String name = ApplicationManager.getApplication().runReadAction(
+            (Computable<String>) () -> {
+                PsiMethod method = methodToMove.getMethod().getElement();
+                return method == null ? "" : MethodUtils.fullyQualifiedName(method);
+            }
+        );
+
+        reject(
+            methodToMove.getMethodId(),
+            name,
+            methodToMove.getOriginalClassId(),
+            methodToMove.getTargetClassId(),
+            String.valueOf(reason)
+        );
+    }
+
+    private void reject(
+        final int methodId,
+        final @NotNull String name,
+        final int originalClassId,
+        final int targetClassId,
+        final @NotNull String reason
+    ) throws IOException {
+        ProjectAppStarter.log.warn("Move of method " + name + " (id " + methodId + ") is rejected: " + reason);
+        append(dir.resolve(REJECTS_FILE_NAME), REJECTS_FILE_FORMAT, methodId, name, originalClassId, targetClassId, reason);
+    }
+
+    /**
+     * Finishes the run: updates offsets of all moved methods and removes the checkpoint. Fails
+     * if some moved method can't be found, the checkpoint is kept then.
+     */
+    public void finish(final @NotNull Project project) throws IOException {
+        MovedMethodSerializer.getInstance().updateOffsets(project, dir);
+        Files.delete(dir.resolve(CHECKPOINT_FILE_NAME));
+    }
+
+    /**
+     * Appends a record to the given CSV file and syncs it to disk. Header is written only if the
+     * file doesn't exist yet.
+     */
+    static void append(
+        final @NotNull Path file,
+        final @NotNull CSVFormat format,
+        final @NotNull Object... values
+    ) throws IOException {
+        CSVFormat actualFormat = Files.exists(file) ? format.withSkipHeaderRecord() : format;
+
+        try (
+            FileOutputStream stream = new FileOutputStream(file.toFile(), true);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+            CSVPrinter csvPrinter = new CSVPrinter(writer, actualFormat)
+        ) {
+            if (values.length != 0) {
+                csvPrinter.printRecord(values);
+            }
+
+            csvPrinter.flush();
+            stream.getFD().sync();
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.mover;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Chooses moves which can be performed together. Two moves conflict if they share a class, no
+ * matter whether it is a source or a target of a move, so chosen moves form a matching in the
+ * graph whose vertices are classes and whose edges are possible moves. Result depends only on
+ * the order of candidates and the seed.
+ */
+public class MoveSelector {
+    public enum Strategy {
+        /**
+         * Takes candidates in their order and skips the ones which conflict with already taken
+         * moves.
+         */
+        GREEDY,
+
+        /**
+         * Finds the maximum number of non-conflicting moves with Edmonds' blossom algorithm.
+         */
+        MATCHING
+    }
+
+    private final @NotNull Strategy strategy;
+
+    private final @Nullable Long seed;
+
+    /**
+     * @param seed seed for shuffling of candidates before selection, {@code null} means that
+     *             candidates are taken in the given order.
+     */
+    public MoveSelector(final @NotNull Strategy strategy, final @Nullable Long seed) {
+        this.strategy = strategy;
+        this.seed = seed;
+    }
+
+    /**
+     * @return chosen candidates ordered by ids of methods.
+     */
+    public @NotNull List<Candidate> select(final @NotNull List<Candidate> candidates) {
+        List<Candidate> ordered = new ArrayList<>(candidates);
+        if (seed != null) {
+            Collections.shuffle(ordered, new Random(seed));
+        }
+
+        List<Candidate> selected;
+        switch (strategy) {
+            case GREEDY:
+                selected = selectGreedily(ordered);
+                break;
+            case MATCHING:
+                selected = selectMaximumMatching(ordered);
+                break;
+            default:
+                throw new IllegalStateException("Unknown strategy: " + strategy);
+        }
+
+        selected.sort(Comparator.comparingInt(Candidate::getMethodId));
+        return selected;
+    }
+
+    private static @NotNull List<Candidate> selectGreedily(final @NotNull List<Candidate> candidates) {
+        Set<Integer> usedClasses = new HashSet<>();
+
+        List<Candidate> selected = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (
+                candidate.sourceClassId != candidate.targetClassId &&
+                !usedClasses.contains(candidate.sourceClassId) &&
+                !usedClasses.contains(candidate.targetClassId)
+            ) {
+                usedClasses.add(candidate.sourceClassId);
+                usedClasses.add(candidate.targetClassId);
+                selected.add(candidate);
+            }
+        }
+
+        return selected;
+    }
+
+    private static @NotNull List<Candidate> selectMaximumMatching(final @NotNull List<Candidate> candidates) {
+        Map<Integer, Integer> vertexOfClass = new HashMap<>();
+        Map<Long, Candidate> candidateOfEdge = new HashMap<>();
+        List<List<Integer>> adjacency = new ArrayList<>();
+
+        for (Candidate candidate : candidates) {
+            if (candidate.sourceClassId == candidate.targetClassId) {
+                continue;
+            }
+
+            int source = vertexOfClass.computeIfAbsent(candidate.sourceClassId, it -> addVertex(adjacency));
+            int target = vertexOfClass.computeIfAbsent(candidate.targetClassId, it -> addVertex(adjacency));
+
+            if (candidateOfEdge.putIfAbsent(edge(source, target), candidate) == null) {
+                adjacency.get(source).add(target);
+                adjacency.get(target).add(source);
+            }
+        }
+
+        int[] match = new BlossomMatching(adjacency).run();
+
+        List<Candidate> selected = new ArrayList<>();
+        for (int vertex = 0; vertex < match.length; vertex++) {
+            if (match[vertex] > vertex) {
+                selected.add(candidateOfEdge.get(edge(vertex, match[vertex])));
+            }
+        }
+
+        return selected;
+    }
+
+    private static int addVertex(final @NotNull List<List<Integer>> adjacency) {
+        adjacency.add(new ArrayList<>());
+        return adjacency.size() - 1;
+    }
+
+    private static long edge(final int first, final int second) {
+        return ((long) Math.min(first, second) << 32) | Math.max(first, second);
+    }
+
+    /**
+     * Maximum matching in a general graph. Matching is initialized greedily and then augmented
+     * from every free vertex, odd cycles are contracted into blossoms during the search.
+     */
+    private static class BlossomMatching {
+        private final int n;
+
+        private final int[][] adjacency;
+
+        private final int[] match;
+
+        private final int[] parent;
+
+        private final int[] base;
+
+        private final boolean[] used;
+
+        private final boolean[] blossom;
+
+        private final boolean[] onPath;
+
+        private final int[] queue;
+
+        private BlossomMatching(final @NotNull List<List<Integer>> adjacency) {
+            n = adjacency.size();
+
+            this.adjacency = new int[n][];
+            for (int vertex = 0; vertex < n; vertex++) {
+                this.adjacency[vertex] = adjacency.get(vertex).stream().mapToInt(Integer::intValue).toArray();
+            }
+
+            match = new int[n];
+            parent = new int[n];
+            base = new int[n];
+            used = new boolean[n];
+            blossom = new boolean[n];
+            onPath = new boolean[n];
+            queue = new int[n];
+        }
+
+        private @NotNull int[] run() {
+            Arrays.fill(match, -1);
+
+            for (int vertex = 0; vertex < n; vertex++) {
+                if (match[vertex] != -1) {
+                    continue;
+                }
+
+                for (int neighbour : adjacency[vertex]) {
+                    if (match[neighbour] == -1) {
+                        match[vertex] = neighbour;
+                        match[neighbour] = vertex;
+                        break;
+                    }
+                }
+            }
+
+            for (int vertex = 0; vertex < n; vertex++) {
+                if (match[vertex] != -1) {
+                    continue;
+                }
+
+                int end = findAugmentingPath(vertex);
+                while (end != -1) {
+                    int previous = parent[end];
+                    int next = match[previous];
+
+                    match[end] = previous;
+                    match[previous] = end;
+                    end = next;
+                }
+            }
+
+            return match;
+        }
+
+        private int findAugmentingPath(final int root) {
+            Arrays.fill(used, false);
+            Arrays.fill(parent, -1);
+            for (int vertex = 0; vertex < n; vertex++) {
+                base[vertex] = vertex;
+            }
+
+            used[root] = true;
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = root;
+
+            while (head < tail) {
+                int vertex = queue[head++];
+
+                for (int neighbour : adjacency[vertex]) {
+                    if (base[vertex] == base[neighbour] || match[vertex] == neighbour) {
+                        continue;
+                    }
+
+                    if (neighbour == root || match[neighbour] != -1 && parent[match[neighbour]] != -1) {
+                        int commonBase = lowestCommonAncestor(vertex, neighbour);
+
+                        Arrays.fill(blossom, false);
+                        markPath(vertex, commonBase, neighbour);
+                        markPath(neighbour, commonBase, vertex);
+
+                        for (int other = 0; other < n; other++) {
+                            if (blossom[base[other]]) {
+                                base[other] = commonBase;
+                                if (!used[other]) {
+                                    used[other] = true;
+                                    queue[tail++] = other;
+                                }
+                            }
+                        }
+                    } else if (parent[neighbour] == -1) {
+                        parent[neighbour] = vertex;
+                        if (match[neighbour] == -1) {
+                            return neighbour;
+                        }
+
+                        used[match[neighbour]] = true;
+                        queue[tail++] = match[neighbour];
+                    }
+                }
+            }
+
+            return -1;
+        }
+
+        private int lowestCommonAncestor(int first, int second) {
+            Arrays.fill(onPath, false);
+
+            while (true) {
+                first = base[first];
+                onPath[first] = true;
+                if (match[first] == -1) {
+                    break;
+                }
+
+                first = parent[match[first]];
+            }
+
+            while (true) {
+                second = base[second];
+                if (onPath[second]) {
+                    return second;
+                }
+
+                second = parent[match[second]];
+            }
+        }
+
+        private void markPath(int vertex, final int commonBase, int child) {
+            while (base[vertex] != commonBase) {
+                blossom[base[vertex]] = true;
+                blossom[base[match[vertex]]] = true;
+                parent[vertex] = child;
+                child = match[vertex];
+                vertex = parent[match[vertex]];
+            }
+        }
+    }
+
+    /**
+     * Possible move of a method from its class to one of its targets.
+     */
+    public static class Candidate {
+        private final int methodId;
+
+        private final int sourceClassId;
+
+        private final int targetClassId;
+
+        public Candidate(final int methodId, final int sourceClassId, final int targetClassId) {
+            this.methodId = methodId;
+            this.sourceClassId = sourceClassId;
+            this.targetClassId = targetClassId;
+        }
+
+        public int getMethodId() {
+            return methodId;
+        }
+
+        public int getSourceClassId() {
+            return sourceClassId;
+        }
+
+        public int getTargetClassId() {
+            return targetClassId;
+        }
+    }
+}
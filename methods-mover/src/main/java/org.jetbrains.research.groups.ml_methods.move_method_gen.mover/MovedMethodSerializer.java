@@ -1,25 +1,31 @@
 package org.jetbrains.research.groups.ml_methods.move_method_gen.mover;
 
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.Ref;
-import com.intellij.psi.PsiClass;
+import com.intellij.psi.JavaRecursiveElementVisitor;
+import com.intellij.psi.PsiJavaFile;
 import com.intellij.psi.PsiMethod;
-import com.intellij.psi.SmartPsiElementPointer;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.research.groups.ml_methods.move_method_gen.Dataset;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.ProjectAppStarter;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.MethodUtils;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.Function;
 
 import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static org.jetbrains.research.groups.ml_methods.move_method_gen.utils.JavaFileUtils.getFileByPath;
 import static org.jetbrains.research.groups.ml_methods.move_method_gen.utils.JavaFileUtils.getPathToContainingFile;
 
 public class MovedMethodSerializer {
@@ -36,29 +42,40 @@ public class MovedMethodSerializer {
         return INSTANCE;
     }
 
-    public void serialize(
-        final @NotNull MovedMethodList list,
+    /**
+     * Creates a file with a header only. Fails if the file already exists.
+     */
+    public void create(final @NotNull Path targetDir) throws IOException {
+        try (
+            BufferedWriter writer = Files.newBufferedWriter(targetDir.resolve(FILE_NAME), CREATE_NEW);
+            CSVPrinter ignored = new CSVPrinter(writer, FILE_FORMAT)
+        ) {
+        }
+    }
+
+    /**
+     * Appends a record of the given method and syncs the file to disk.
+     */
+    public void append(
+        final @NotNull MovedMethodList.Method method,
         final @NotNull Path targetDir
     ) throws IOException {
         Ref<IOException> exceptionRef = new Ref<>(null);
         ApplicationManager.getApplication().runReadAction(
             () -> {
-                try (
-                    BufferedWriter writer = Files.newBufferedWriter(targetDir.resolve(FILE_NAME), CREATE_NEW);
-                    CSVPrinter csvPrinter = new CSVPrinter(writer, FILE_FORMAT)
-                ) {
-                    for (MovedMethodList.Method method : list.getList()) {
-                        PsiMethod psiMethod = method.getMethod().getElement();
-
-                        csvPrinter.printRecord(
-                            method.getMethodId(),
-                            MethodUtils.fullyQualifiedName(psiMethod),
-                            getPathToContainingFile(psiMethod),
-                            psiMethod.getNode().getStartOffset(),
-                            method.getOriginalClassId(),
-                            method.getTargetClassId()
-                        );
-                    }
+                PsiMethod psiMethod = method.getMethod().getElement();
+
+                try {
+                    MoveJournal.append(
+                        targetDir.resolve(FILE_NAME),
+                        FILE_FORMAT,
+                        method.getMethodId(),
+                        MethodUtils.fullyQualifiedName(psiMethod),
+                        getPathToContainingFile(psiMethod),
+                        psiMethod.getNode().getStartOffset(),
+                        method.getOriginalClassId(),
+                        method.getTargetClassId()
+                    );
                 } catch (IOException exception) {
                     exceptionRef.set(exception);
                 }
@@ -69,4 +86,134 @@ public class MovedMethodSerializer {
             throw exceptionRef.get();
         }
     }
+
+    /**
+     * Removes records of methods which are not found in their recorded files. Such a record was
+     * appended right before the run was interrupted, before the moved code was saved.
+     *
+     * @return ids of the remaining methods.
+     */
+    public @NotNull Set<Integer> retainSavedMethods(
+        final @NotNull Project project,
+        final @NotNull Path targetDir
+    ) throws IOException {
+        List<CSVRecord> records = readRecords(targetDir);
+
+        Set<Integer> ids = new HashSet<>();
+        List<CSVRecord> savedRecords = new ArrayList<>();
+        for (CSVRecord record : records) {
+            if (findMethod(project, record) != null) {
+                ids.add(Integer.parseInt(record.get("id")));
+                savedRecords.add(record);
+            } else {
+                ProjectAppStarter.log.warn(
+                    "Moved method " + record.get("name") + " (id " + record.get("id") + ") was not saved, it is moved again"
+                );
+            }
+        }
+
+        if (savedRecords.size() != records.size()) {
+            rewrite(targetDir, savedRecords, CSVRecord::toMap);
+        }
+
+        return ids;
+    }
+
+    /**
+     * Rewrites offsets of all recorded methods according to the current state of the project,
+     * since moves performed after a record was appended can shift methods. Moved methods have
+     * unique names in their target classes, so they are found by name.
+     *
+     * @throws IllegalStateException if some recorded method is not found. The file is left
+     *                               unchanged then.
+     */
+    public void updateOffsets(final @NotNull Project project, final @NotNull Path targetDir) throws IOException {
+        List<CSVRecord> records = readRecords(targetDir);
+
+        Map<CSVRecord, String> offsets = new HashMap<>();
+        List<String> lostMethods = new ArrayList<>();
+        for (CSVRecord record : records) {
+            Integer offset = ApplicationManager.getApplication().runReadAction(
+                (Computable<Integer>) () -> {
+                    PsiMethod method = findMethod(project, record);
+                    return method == null ? null : method.getNode().getStartOffset();
+                }
+            );
+
+            if (offset == null) {
+                lostMethods.add(record.get("name") + " (id " + record.get("id") + ") in " + record.get("file"));
+            } else {
+                offsets.put(record, Integer.toString(offset));
+            }
+        }
+
+        if (!lostMethods.isEmpty()) {
+            throw new IllegalStateException("Moved methods are not found: " + String.join(", ", lostMethods));
+        }
+
+        rewrite(targetDir, records, record -> {
+            Map<String, String> values = record.toMap();
+            values.put("offset", offsets.get(record));
+
+            return values;
+        });
+    }
+
+    private void rewrite(
+        final @NotNull Path targetDir,
+        final @NotNull List<CSVRecord> records,
+        final @NotNull Function<CSVRecord, Map<String, String>> values
+    ) throws IOException {
+        Path file = targetDir.resolve(FILE_NAME);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (
+            BufferedWriter writer = Files.newBufferedWriter(tmp);
+            CSVPrinter csvPrinter = new CSVPrinter(writer, FILE_FORMAT)
+        ) {
+            for (CSVRecord record : records) {
+                Map<String, String> recordValues = values.apply(record);
+
+                List<String> row = new ArrayList<>();
+                for (String column : FILE_FORMAT.getHeader()) {
+                    row.add(recordValues.get(column));
+                }
+
+                csvPrinter.printRecord(row);
+            }
+        }
+
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static @Nullable PsiMethod findMethod(final @NotNull Project project, final @NotNull CSVRecord record) {
+        return ApplicationManager.getApplication().runReadAction(
+            (Computable<PsiMethod>) () -> {
+                Optional<PsiJavaFile> javaFile = getFileByPath(project, record.get("file"), false);
+                return javaFile.isPresent() ? findMethodByName(javaFile.get(), record.get("name")) : null;
+            }
+        );
+    }
+
+    private @NotNull List<CSVRecord> readRecords(final @NotNull Path targetDir) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(targetDir.resolve(FILE_NAME))) {
+            return FILE_FORMAT.withSkipHeaderRecord().parse(reader).getRecords();
+        }
+    }
+
+    private static @Nullable PsiMethod findMethodByName(final @NotNull PsiJavaFile file, final @NotNull String name) {
+        Ref<PsiMethod> result = new Ref<>(null);
+        file.accept(new JavaRecursiveElementVisitor() {
+            @Override
+            public void visitMethod(final @NotNull PsiMethod method) {
+                super.visitMethod(method);
+
+                if (result.isNull() && name.equals(MethodUtils.fullyQualifiedName(method))) {
+                    result.set(method);
+                }
+            }
+        });
+
+        return result.get();
+    }
 }
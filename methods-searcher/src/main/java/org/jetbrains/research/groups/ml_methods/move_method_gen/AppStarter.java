@@ -1,18 +1,14 @@
 package org.jetbrains.research.groups.ml_methods.move_method_gen;
 
-import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.util.Computable;
-import com.intellij.openapi.util.Ref;
-import org.apache.log4j.FileAppender;
-import org.apache.log4j.PatternLayout;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
 public class AppStarter extends ProjectAppStarter {
+    private static final @NotNull String INCREMENTAL_PREVIOUS_PROPERTY = "movemethodgen.incremental.previous";
+
     private Path outputDir;
 
     @Override
@@ -36,42 +32,13 @@ public class AppStarter extends ProjectAppStarter {
 
     @Override
     protected void run(@NotNull Project project) throws Exception {
-        final Ref<Exception> exceptionRef = new Ref<>(null);
-        ApplicationManager.getApplication().runReadAction(
-                (Computable<ProjectInfo>) () -> {
-                    ProjectInfo info = new ProjectInfo(project);
-
-                    log.info("Total number of java files: " + info.getAllJavaFiles().size());
-                    log.info("Total number of source java files: " + info.getSourceJavaFiles().size());
-                    log.info("Total number of classes: " + info.getClasses().size());
-                    log.info("Total number of methods: " + info.getMethods().size());
-
-                    info.getMethodsFilters().forEach(filter -> {
-                        log.info(filter.getDescription());
-                    });
-
-                    log.info("Number of methods after filtration: " + info.getMethodsAfterFiltration().size());
+        String previousDir = System.getProperty(INCREMENTAL_PREVIOUS_PROPERTY);
 
-                    try {
-                        ContextPathCsvSerializer.getInstance().serialize(
-                            new ContextPathDataset(Dataset.createDataset(
-                                info.getProject(),
-                                new RelevantClasses(info.getClasses()),
-                                info.getMethodsAfterFiltration()
-                            )),
-                            outputDir
-                        );
-                    } catch (Exception e) {
-                        exceptionRef.set(e);
-                    }
-
-                    return info;
-                }
-        );
-
-        if (!exceptionRef.isNull()) {
-            throw exceptionRef.get();
-        }
+        new DatasetGenerator(
+            outputDir,
+            previousDir == null ? null : Paths.get(previousDir),
+            log
+        ).generate(project);
     }
 
     protected @NotNull Path getOutputDir() {
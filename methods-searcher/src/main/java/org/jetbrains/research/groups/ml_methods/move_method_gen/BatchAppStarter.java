@@ -0,0 +1,334 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ApplicationStarter;
+import com.intellij.openapi.application.ex.ApplicationEx;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Ref;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.log4j.Appender;
+import org.apache.log4j.MDC;
+import org.apache.log4j.spi.Filter;
+import org.apache.log4j.spi.LoggingEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.jetbrains.research.groups.ml_methods.move_method_gen.ProjectAppStarter.log;
+
+/**
+ * Generates datasets for several projects in a single application. Projects are listed in a
+ * manifest, a csv file with columns {@code project} and {@code output} and an optional column
+ * {@code previous} with a dataset to update incrementally. Relative paths are resolved against
+ * the directory of the manifest. Every project is opened, processed and closed on its own, its
+ * log is written into its output folder, and a failure of one project doesn't stop processing
+ * of the others. Outcome of every project is printed and written into
+ * {@code batch-summary.csv} next to the manifest.
+ *
+ * Several projects can be processed at the same time, their number is limited by
+ * {@link HeapBudget}. Projects are opened and closed on the event dispatch thread, while
+ * datasets are generated in background threads. Opening and closing a project takes write
+ * actions, and a pending write action doesn't let other threads take read actions, while
+ * analysis of a project holds a read action for a long time. Therefore a project is opened or
+ * closed only when no project is being analysed, and analysis of the other projects waits
+ * meanwhile. Path contexts extraction and writing of datasets go on in the meantime.
+ */
+public class BatchAppStarter implements ApplicationStarter {
+    private static final @NotNull String MAX_PROJECTS_PROPERTY = "movemethodgen.batch.maxProjects";
+
+    private static final @NotNull String HEAP_PER_SOURCE_BYTE_PROPERTY = "movemethodgen.batch.heapPerSourceByte";
+
+    private static final double DEFAULT_HEAP_PER_SOURCE_BYTE = 40;
+
+    private static final @NotNull String PROJECT_MDC_KEY = "movemethodgen.project";
+
+    private static final @NotNull CSVFormat MANIFEST_FORMAT = CSVFormat.RFC4180.withFirstRecordAsHeader();
+
+    private static final @NotNull String SUMMARY_FILE_NAME = "batch-summary.csv";
+
+    private static final @NotNull CSVFormat SUMMARY_FORMAT = CSVFormat.RFC4180.withHeader("project", "output", "status");
+
+    private Path manifestPath;
+
+    /**
+     * Held shared while a project is analysed under a long read action and exclusively while a
+     * project is opened or closed.
+     */
+    private final @NotNull ReadWriteLock projectModelLock = new ReentrantReadWriteLock();
+
+    @Override
+    public String getCommandName() {
+        return "generate-datasets";
+    }
+
+    @Override
+    public void premain(String[] args) {
+        if (args == null || args.length != 2) {
+            System.err.println("Invalid number of arguments!");
+            System.exit(1);
+            return;
+        }
+
+        manifestPath = Paths.get(args[1]).toAbsolutePath();
+    }
+
+    /**
+     * Starts processing in a separate thread and returns, so that the event dispatch thread is
+     * free to open and close projects. Application exits when all projects are processed.
+     */
+    @Override
+    public void main(String[] args) {
+        List<Entry> entries;
+        try {
+            entries = readManifest(manifestPath);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Failed to read manifest " + manifestPath + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        ApplicationEx application = (ApplicationEx) ApplicationManager.getApplication();
+        application.doNotSave();
+
+        Thread coordinator = new Thread(() -> {
+            try {
+                processAll(entries);
+            } finally {
+                application.invokeLater(() -> application.exit(true, true));
+            }
+        }, "Batch dataset generation");
+
+        coordinator.start();
+    }
+
+    private void processAll(final @NotNull List<Entry> entries) {
+        int maxProjects = Math.max(1, Integer.getInteger(MAX_PROJECTS_PROPERTY, 1));
+
+        String heapPerSourceByte = System.getProperty(HEAP_PER_SOURCE_BYTE_PROPERTY);
+        HeapBudget heapBudget = new HeapBudget(
+            maxProjects,
+            heapPerSourceByte == null ? DEFAULT_HEAP_PER_SOURCE_BYTE : Double.parseDouble(heapPerSourceByte)
+        );
+
+        Set<Entry> failedEntries = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        Set<Entry> processedEntries = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        List<Future<?>> tasks = new ArrayList<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(maxProjects);
+        try {
+            for (Entry entry : entries) {
+                long estimate = heapBudget.estimate(Paths.get(entry.projectFolderPath));
+                heapBudget.acquire(estimate);
+
+                tasks.add(executor.submit(() -> {
+                    try {
+                        if (!process(entry)) {
+                            failedEntries.add(entry);
+                        }
+
+                        processedEntries.add(entry);
+                    } finally {
+                        heapBudget.release(estimate);
+                    }
+                }));
+            }
+
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            System.err.println("Batch generation is interrupted: " + e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<String> failedProjects = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (failedEntries.contains(entry)) {
+                failedProjects.add(entry.projectFolderPath);
+            }
+        }
+
+        System.out.println(
+            "Processed " + processedEntries.size() + " of " + entries.size() + " projects, failed: " +
+            failedProjects.size() + (failedProjects.isEmpty() ? "" : " " + failedProjects)
+        );
+
+        Path summaryPath = manifestPath.resolveSibling(SUMMARY_FILE_NAME);
+        try {
+            writeSummary(summaryPath, entries, processedEntries, failedEntries);
+        } catch (IOException e) {
+            System.err.println("Failed to write summary " + summaryPath + ": " + e.getMessage());
+        }
+    }
+
+    private static void writeSummary(
+        final @NotNull Path summaryPath,
+        final @NotNull List<Entry> entries,
+        final @NotNull Set<Entry> processedEntries,
+        final @NotNull Set<Entry> failedEntries
+    ) throws IOException {
+        try (
+            BufferedWriter writer = Files.newBufferedWriter(summaryPath);
+            CSVPrinter csvPrinter = new CSVPrinter(writer, SUMMARY_FORMAT)
+        ) {
+            for (Entry entry : entries) {
+                String status;
+                if (!processedEntries.contains(entry)) {
+                    status = "not processed";
+                } else if (failedEntries.contains(entry)) {
+                    status = "failed";
+                } else {
+                    status = "generated";
+                }
+
+                csvPrinter.printRecord(entry.projectFolderPath, entry.outputDir, status);
+            }
+        }
+    }
+
+    /**
+     * Processes a single project in the current thread. Log events of this thread (and threads
+     * it starts) are written into the log of the project only.
+     *
+     * @return {@code true} if dataset for the project was successfully generated.
+     */
+    private boolean process(final @NotNull Entry entry) {
+        MDC.put(PROJECT_MDC_KEY, entry.projectFolderPath);
+        Appender appender = ProjectAppStarter.attachLog(entry.outputDir, new ProjectFilter(entry.projectFolderPath));
+
+        try {
+            Project project;
+            projectModelLock.writeLock().lock();
+            try {
+                project = openProject(entry);
+            } finally {
+                projectModelLock.writeLock().unlock();
+            }
+
+            if (project == null) {
+                log.error("Unable to open project: " + entry.projectFolderPath);
+                return false;
+            }
+
+            try {
+                ProjectAppStarter.waitForIndexing(project);
+
+                new DatasetGenerator(entry.outputDir, entry.previousDir, log, projectModelLock.readLock())
+                    .generate(project);
+
+                return true;
+            } finally {
+                ProjectAppStarter.reportTimings(project, entry.outputDir, ProjectAppStarter.TIMINGS_FILE_NAME);
+
+                projectModelLock.writeLock().lock();
+                try {
+                    ProjectAppStarter.closeProject(project);
+                } finally {
+                    projectModelLock.writeLock().unlock();
+                }
+            }
+        } catch (Throwable e) {
+            ProjectAppStarter.logException(e);
+            return false;
+        } finally {
+            ProjectAppStarter.detachLog(appender);
+            MDC.remove(PROJECT_MDC_KEY);
+        }
+    }
+
+    private static @Nullable Project openProject(final @NotNull Entry entry) throws Exception {
+        Ref<Project> projectRef = new Ref<>(null);
+        Ref<Exception> exceptionRef = new Ref<>(null);
+
+        ApplicationManager.getApplication().invokeAndWait(() -> {
+            MDC.put(PROJECT_MDC_KEY, entry.projectFolderPath);
+            try {
+                projectRef.set(ProjectAppStarter.openProject(entry.projectFolderPath));
+            } catch (Exception e) {
+                exceptionRef.set(e);
+            } finally {
+                MDC.remove(PROJECT_MDC_KEY);
+            }
+        });
+
+        if (!exceptionRef.isNull()) {
+            throw exceptionRef.get();
+        }
+
+        return projectRef.get();
+    }
+
+    private static @NotNull List<Entry> readManifest(final @NotNull Path manifestPath) throws IOException {
+        Path baseDir = manifestPath.getParent();
+
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(manifestPath)) {
+            for (CSVRecord record : MANIFEST_FORMAT.parse(reader)) {
+                String previous = record.isMapped("previous") ? record.get("previous") : "";
+
+                entries.add(new Entry(
+                    baseDir.resolve(record.get("project")).normalize().toString().replace(File.separatorChar, '/'),
+                    baseDir.resolve(record.get("output")).normalize(),
+                    previous.isEmpty() ? null : baseDir.resolve(previous).normalize()
+                ));
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * Accepts only log events of threads which process the given project.
+     */
+    private static class ProjectFilter extends Filter {
+        private final @NotNull String projectFolderPath;
+
+        private ProjectFilter(final @NotNull String projectFolderPath) {
+            this.projectFolderPath = projectFolderPath;
+        }
+
+        @Override
+        public int decide(final @NotNull LoggingEvent event) {
+            return projectFolderPath.equals(event.getMDC(PROJECT_MDC_KEY)) ? NEUTRAL : DENY;
+        }
+    }
+
+    private static class Entry {
+        private final @NotNull String projectFolderPath;
+
+        private final @NotNull Path outputDir;
+
+        private final @Nullable Path previousDir;
+
+        private Entry(
+            final @NotNull String projectFolderPath,
+            final @NotNull Path outputDir,
+            final @Nullable Path previousDir
+        ) {
+            this.projectFolderPath = projectFolderPath;
+            this.outputDir = outputDir;
+            this.previousDir = previousDir;
+        }
+    }
+}
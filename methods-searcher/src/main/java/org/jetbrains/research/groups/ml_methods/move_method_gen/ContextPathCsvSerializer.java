@@ -1,26 +1,30 @@
 package org.jetbrains.research.groups.ml_methods.move_method_gen;
 
-import JavaExtractor.Common.CommandLineValues;
-import JavaExtractor.Common.Common;
-import JavaExtractor.ExtractFeaturesTask;
-import JavaExtractor.FeaturesEntities.ProgramFeatures;
 import com.github.javaparser.ParseException;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiMethod;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.exceptions.UnexpectedEmptyContext;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.MethodUtils;
-import org.kohsuke.args4j.CmdLineException;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.PhaseTimings;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -41,10 +45,6 @@ public class ContextPathCsvSerializer {
 
     private static final @NotNull CSVFormat CLASSES_FILE_FORMAT = CSVFormat.RFC4180.withHeader(ID.toString(), NAME.toString(), "methods", FILE.toString(), OFFSET.toString());
 
-    private static final int MAX_PATH_LENGTH = 8;
-
-    private static final int MAX_PATH_WIDTH = 2;
-
     private ContextPathCsvSerializer() {
     }
 
@@ -56,74 +56,154 @@ public class ContextPathCsvSerializer {
     public void serialize(
         final @NotNull ContextPathDataset dataset,
         final @NotNull Path targetDir
-    ) throws IOException, CmdLineException, ParseException, UnexpectedEmptyContext {
-        targetDir.toFile().mkdirs();
+    ) throws IOException, ParseException, UnexpectedEmptyContext {
+        serialize(dataset, targetDir, new PathContextExtractor(1, PathContextCache.inMemory()));
+    }
 
-        try (
-            BufferedWriter writer = Files.newBufferedWriter(targetDir.resolve(METHODS_FILE_NAME), CREATE_NEW);
-            CSVPrinter csvPrinter = new CSVPrinter(writer, METHODS_FILE_FORMAT)
-        ) {
-            List<PsiMethod> methods = dataset.getMethods();
-            for (int methodId = 0; methodId < methods.size(); methodId++) {
-                PsiMethod method = methods.get(methodId);
+    public void serialize(
+        final @NotNull ContextPathDataset dataset,
+        final @NotNull Path targetDir,
+        final @NotNull PathContextExtractor extractor
+    ) throws IOException, ParseException, UnexpectedEmptyContext {
+        serialize(createTables(dataset, extractor), targetDir);
+    }
 
-                CommandLineValues cmdValues = new CommandLineValues(
-                    "--max_path_length", Integer.toString(MAX_PATH_LENGTH),
-                    "--max_path_width", Integer.toString(MAX_PATH_WIDTH)
-                );
+    /**
+     * Everything needed from PSI is taken under a single read action first. Path contexts are
+     * extracted after that, so the caller must not hold a read action to let the extraction
+     * run without blocking write actions.
+     */
+    public @NotNull ContextPathTables createTables(
+        final @NotNull ContextPathDataset dataset,
+        final @NotNull PathContextExtractor extractor
+    ) throws IOException, ParseException, UnexpectedEmptyContext {
+        List<PathContextExtractor.MethodSnapshot> snapshots = new ArrayList<>();
 
-                ExtractFeaturesTask extractTask =
-                    new ExtractFeaturesTask(cmdValues, removeDanglingOneLineComments(method.getText()));
+        ContextPathTables tables = ApplicationManager.getApplication().runReadAction(
+            (Computable<ContextPathTables>) () -> {
+                List<ContextPathTables.MethodRecord> methodRecords = new ArrayList<>();
 
-                ArrayList<ProgramFeatures> methodsContexts = new ArrayList<>(
-                    extractTask.extractSingleFile()
-                        .stream()
-                        .filter(it -> it.getName().equals(splitName(method)))
-                        .limit(1)
-                        .collect(Collectors.toList())
-                );
+                List<PsiMethod> methods = dataset.getMethods();
+                for (int methodId = 0; methodId < methods.size(); methodId++) {
+                    PsiMethod method = methods.get(methodId);
+                    snapshots.add(PathContextExtractor.snapshot(method));
+
+                    methodRecords.add(new ContextPathTables.MethodRecord(
+                        methodId,
+                        MethodUtils.fullyQualifiedName(method),
+                        "",
+                        getPathToContainingFile(method).toString(),
+                        method.getNode().getStartOffset(),
+                        dataset.getIdOfContainingClass(method),
+                        dataset.getIdsOfTargetClasses(method)
+                    ));
+                }
+
+                List<ContextPathTables.ClassRecord> classRecords = new ArrayList<>();
 
+                List<PsiClass> classes = dataset.getClasses();
+                for (int classId = 0; classId < classes.size(); classId++) {
+                    PsiClass clazz = classes.get(classId);
 
-                String pathContext = extractTask.featuresToString(methodsContexts);
-                if (pathContext.isEmpty()) {
-                    throw new UnexpectedEmptyContext(MethodUtils.fullyQualifiedName(method));
+                    classRecords.add(new ContextPathTables.ClassRecord(
+                        classId,
+                        StringUtil.notNullize(clazz.getQualifiedName()),
+                        dataset.getIdsOfMethodsIn(clazz),
+                        getPathToContainingFile(clazz).toString(),
+                        clazz.getNode().getStartOffset()
+                    ));
                 }
 
+                List<ContextPathTables.PointRecord> pointRecords = dataset.getPoints().stream()
+                    .map(it -> new ContextPathTables.PointRecord(it.getMethodId(), it.getClassId(), it.getLabel()))
+                    .collect(Collectors.toList());
+
+                return new ContextPathTables(classRecords, methodRecords, pointRecords);
+            }
+        );
+
+        List<String> contexts = extractor.extract(snapshots);
+
+        List<ContextPathTables.MethodRecord> methods = new ArrayList<>();
+        for (ContextPathTables.MethodRecord method : tables.getMethods()) {
+            methods.add(new ContextPathTables.MethodRecord(
+                method.getId(),
+                method.getName(),
+                contexts.get(method.getId()),
+                method.getFile(),
+                method.getOffset(),
+                method.getClassId(),
+                method.getTargetIds()
+            ));
+        }
+
+        return new ContextPathTables(tables.getClasses(), methods, tables.getPoints());
+    }
+
+    /**
+     * Writes tables in the same format as {@link #serialize(ContextPathDataset, Path)} does.
+     */
+    public void serialize(final @NotNull ContextPathTables tables, final @NotNull Path targetDir) throws IOException {
+        serialize(tables, targetDir, new PhaseTimings());
+    }
+
+    /**
+     * Writes tables and records time of writing of every file into the given timings.
+     */
+    public void serialize(
+        final @NotNull ContextPathTables tables,
+        final @NotNull Path targetDir,
+        final @NotNull PhaseTimings timings
+    ) throws IOException {
+        targetDir.toFile().mkdirs();
+
+        timings.measure("write " + METHODS_FILE_NAME, () -> writeMethods(tables, targetDir));
+        timings.measure("write " + CLASSES_FILE_NAME, () -> writeClasses(tables, targetDir));
+        timings.measure("write " + POINTS_FILE_NAME, () -> writePoints(tables, targetDir));
+    }
+
+    private static void writeMethods(final @NotNull ContextPathTables tables, final @NotNull Path targetDir) throws IOException {
+        try (
+            BufferedWriter writer = Files.newBufferedWriter(targetDir.resolve(METHODS_FILE_NAME), CREATE_NEW);
+            CSVPrinter csvPrinter = new CSVPrinter(writer, METHODS_FILE_FORMAT)
+        ) {
+            for (ContextPathTables.MethodRecord method : tables.getMethods()) {
                 csvPrinter.printRecord(
-                    methodId,
-                    MethodUtils.fullyQualifiedName(method),
-                    pathContext,
-                    getPathToContainingFile(method),
-                    method.getNode().getStartOffset(),
-                    dataset.getIdOfContainingClass(method),
-                    dataset.getIdsOfTargetClasses(method).stream().map(Object::toString).collect(Collectors.joining(" "))
+                    method.getId(),
+                    method.getName(),
+                    method.getContext(),
+                    method.getFile(),
+                    method.getOffset(),
+                    method.getClassId(),
+                    joinIds(method.getTargetIds())
                 );
             }
         }
+    }
 
+    private static void writeClasses(final @NotNull ContextPathTables tables, final @NotNull Path targetDir) throws IOException {
         try (
             BufferedWriter writer = Files.newBufferedWriter(targetDir.resolve(CLASSES_FILE_NAME), CREATE_NEW);
             CSVPrinter csvPrinter = new CSVPrinter(writer, CLASSES_FILE_FORMAT)
         ) {
-            List<PsiClass> classes = dataset.getClasses();
-            for (int classId = 0; classId < classes.size(); classId++) {
-                PsiClass clazz = classes.get(classId);
-
+            for (ContextPathTables.ClassRecord clazz : tables.getClasses()) {
                 csvPrinter.printRecord(
-                        classId,
-                        clazz.getQualifiedName(),
-                        dataset.getIdsOfMethodsIn(clazz).stream().map(Object::toString).collect(Collectors.joining(" ")),
-                        getPathToContainingFile(clazz),
-                        clazz.getNode().getStartOffset()
+                    clazz.getId(),
+                    clazz.getName(),
+                    joinIds(clazz.getMethodIds()),
+                    clazz.getFile(),
+                    clazz.getOffset()
                 );
             }
         }
+    }
 
+    private static void writePoints(final @NotNull ContextPathTables tables, final @NotNull Path targetDir) throws IOException {
         try (
             BufferedWriter writer = Files.newBufferedWriter(targetDir.resolve(POINTS_FILE_NAME), CREATE_NEW);
             CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.RFC4180)
         ) {
-            for (ContextPathDataset.Point point : dataset.getPoints()) {
+            for (ContextPathTables.PointRecord point : tables.getPoints()) {
                 csvPrinter.printRecord(
                     point.getMethodId(),
                     point.getClassId(),
@@ -133,19 +213,100 @@ public class ContextPathCsvSerializer {
         }
     }
 
-    private @NotNull String removeDanglingOneLineComments(final @NotNull String code) {
-        return code.replaceAll("//.*?\\z", "");
+    /**
+     * Reads tables written by {@link #serialize(ContextPathTables, Path)}. Datasets without path
+     * contexts (headerless {@code methods.csv} and {@code classes.csv} without {@code points.csv})
+     * can't be read, since contexts of their methods are unknown.
+     *
+     * @throws IllegalArgumentException if the directory holds a dataset in another format.
+     */
+    public @NotNull ContextPathTables deserializeTables(final @NotNull Path dir) throws IOException {
+        checkHeader(dir.resolve(METHODS_FILE_NAME), METHODS_FILE_FORMAT);
+        checkHeader(dir.resolve(CLASSES_FILE_NAME), CLASSES_FILE_FORMAT);
+        if (!Files.exists(dir.resolve(POINTS_FILE_NAME))) {
+            throw new IllegalArgumentException(
+                dir + " is not a dataset with path contexts: there is no " + POINTS_FILE_NAME
+            );
+        }
+
+        List<ContextPathTables.MethodRecord> methods = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(dir.resolve(METHODS_FILE_NAME))) {
+            for (CSVRecord record : METHODS_FILE_FORMAT.withSkipHeaderRecord().parse(reader)) {
+                methods.add(new ContextPathTables.MethodRecord(
+                    Integer.parseInt(record.get(ID.toString())),
+                    record.get(NAME.toString()),
+                    record.get("context"),
+                    record.get(FILE.toString()),
+                    Integer.parseInt(record.get(OFFSET.toString())),
+                    Integer.parseInt(record.get(CONTAINING_CLASS_ID.toString())),
+                    splitIds(record.get(TARGET_IDS.toString()))
+                ));
+            }
+        }
+
+        List<ContextPathTables.ClassRecord> classes = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(dir.resolve(CLASSES_FILE_NAME))) {
+            for (CSVRecord record : CLASSES_FILE_FORMAT.withSkipHeaderRecord().parse(reader)) {
+                classes.add(new ContextPathTables.ClassRecord(
+                    Integer.parseInt(record.get(ID.toString())),
+                    record.get(NAME.toString()),
+                    splitIds(record.get("methods")),
+                    record.get(FILE.toString()),
+                    Integer.parseInt(record.get(OFFSET.toString()))
+                ));
+            }
+        }
+
+        List<ContextPathTables.PointRecord> points = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(dir.resolve(POINTS_FILE_NAME))) {
+            for (CSVRecord record : CSVFormat.RFC4180.parse(reader)) {
+                points.add(new ContextPathTables.PointRecord(
+                    Integer.parseInt(record.get(0)),
+                    Integer.parseInt(record.get(1)),
+                    Integer.parseInt(record.get(2))
+                ));
+            }
+        }
+
+        return new ContextPathTables(classes, methods, points);
+    }
+
+    private static void checkHeader(final @NotNull Path file, final @NotNull CSVFormat format) throws IOException {
+        List<String> header = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            for (CSVRecord record : CSVFormat.RFC4180.parse(reader)) {
+                record.forEach(header::add);
+                break;
+            }
+        }
+
+        if (!header.equals(Arrays.asList(format.getHeader()))) {
+            throw new IllegalArgumentException(
+                file + " is not a part of a dataset with path contexts: expected header " +
+                String.join(",", format.getHeader()) + " but the first line is " + String.join(",", header)
+            );
+        }
+    }
+
+    private static @NotNull String joinIds(final @NotNull List<Integer> ids) {
+        return ids.stream().map(Object::toString).collect(Collectors.joining(" "));
     }
 
-    private @NotNull String splitName(final @NotNull PsiMethod method) {
-        return Common.splitToSubtokens(method.getName())
-            .stream()
-            .collect(Collectors.joining(Common.internalSeparator));
+    private static @NotNull List<Integer> splitIds(final @NotNull String ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        return Arrays.stream(ids.split(" ")).map(Integer::valueOf).collect(Collectors.toList());
     }
 
     private @NotNull Path getPathToContainingFile(final @NotNull PsiElement element) {
-        return Paths.get(element.getProject().getBasePath()).toAbsolutePath().normalize().relativize(
-            Paths.get(element.getContainingFile().getVirtualFile().getCanonicalPath()).toAbsolutePath().normalize()
+        return getPathToFile(element.getProject(), element.getContainingFile().getVirtualFile());
+    }
+
+    static @NotNull Path getPathToFile(final @NotNull Project project, final @NotNull VirtualFile file) {
+        return Paths.get(project.getBasePath()).toAbsolutePath().normalize().relativize(
+            Paths.get(file.getCanonicalPath()).toAbsolutePath().normalize()
         );
     }
 }
@@ -30,7 +30,7 @@ public class ContextPathDataset {
                 .flatMap(it -> Arrays.stream(it.getMethods()))
                 .filter(new EmptyMethodsFilter())
                 .filter(new ConstructorsFilter())
-                .collect(Collectors.toSet());
+                .collect(Collectors.toCollection(LinkedHashSet::new));
 
         methods = new ArrayList<>();
 
@@ -0,0 +1,174 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Contents of files written by {@link ContextPathCsvSerializer} as they are, without any PSI
+ * behind them. Used to patch a previously generated dataset.
+ */
+public class ContextPathTables {
+    private final @NotNull List<ClassRecord> classes;
+
+    private final @NotNull List<MethodRecord> methods;
+
+    private final @NotNull List<PointRecord> points;
+
+    public ContextPathTables(
+        final @NotNull List<ClassRecord> classes,
+        final @NotNull List<MethodRecord> methods,
+        final @NotNull List<PointRecord> points
+    ) {
+        this.classes = classes;
+        this.methods = methods;
+        this.points = points;
+    }
+
+    public @NotNull List<ClassRecord> getClasses() {
+        return Collections.unmodifiableList(classes);
+    }
+
+    public @NotNull List<MethodRecord> getMethods() {
+        return Collections.unmodifiableList(methods);
+    }
+
+    public @NotNull List<PointRecord> getPoints() {
+        return Collections.unmodifiableList(points);
+    }
+
+    public static class ClassRecord {
+        private final int id;
+
+        private final @NotNull String name;
+
+        private final @NotNull List<Integer> methodIds;
+
+        private final @NotNull String file;
+
+        private final int offset;
+
+        public ClassRecord(
+            final int id,
+            final @NotNull String name,
+            final @NotNull List<Integer> methodIds,
+            final @NotNull String file,
+            final int offset
+        ) {
+            this.id = id;
+            this.name = name;
+            this.methodIds = methodIds;
+            this.file = file;
+            this.offset = offset;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public @NotNull String getName() {
+            return name;
+        }
+
+        public @NotNull List<Integer> getMethodIds() {
+            return Collections.unmodifiableList(methodIds);
+        }
+
+        public @NotNull String getFile() {
+            return file;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+    }
+
+    public static class MethodRecord {
+        private final int id;
+
+        private final @NotNull String name;
+
+        private final @NotNull String context;
+
+        private final @NotNull String file;
+
+        private final int offset;
+
+        private final int classId;
+
+        private final @NotNull List<Integer> targetIds;
+
+        public MethodRecord(
+            final int id,
+            final @NotNull String name,
+            final @NotNull String context,
+            final @NotNull String file,
+            final int offset,
+            final int classId,
+            final @NotNull List<Integer> targetIds
+        ) {
+            this.id = id;
+            this.name = name;
+            this.context = context;
+            this.file = file;
+            this.offset = offset;
+            this.classId = classId;
+            this.targetIds = targetIds;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public @NotNull String getName() {
+            return name;
+        }
+
+        public @NotNull String getContext() {
+            return context;
+        }
+
+        public @NotNull String getFile() {
+            return file;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public int getClassId() {
+            return classId;
+        }
+
+        public @NotNull List<Integer> getTargetIds() {
+            return Collections.unmodifiableList(targetIds);
+        }
+    }
+
+    public static class PointRecord {
+        private final int methodId;
+
+        private final int classId;
+
+        private final int label;
+
+        public PointRecord(final int methodId, final int classId, final int label) {
+            this.methodId = methodId;
+            this.classId = classId;
+            this.label = label;
+        }
+
+        public int getMethodId() {
+            return methodId;
+        }
+
+        public int getClassId() {
+            return classId;
+        }
+
+        public int getLabel() {
+            return label;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.psi.PsiMethod;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.analysis.PersistentResolveCache;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.analysis.ReferenceResolver;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.exceptions.IncrementalUpdateException;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.FilterWithCounter;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.GitUtils;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.PhaseTimings;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Generates dataset for a single opened project and writes it into the given directory.
+ */
+public class DatasetGenerator {
+    private static final @NotNull String FILTRATION_WORKERS_PROPERTY = "movemethodgen.filtration.workers";
+
+    private static final @NotNull String ADAPTIVE_FILTRATION_PROPERTY = "movemethodgen.filtration.adaptive";
+
+    private static final @NotNull String RESOLVE_CACHE_PROPERTY = "movemethodgen.resolveCache";
+
+    private static final @NotNull String RESOLVE_CACHE_FILE_SUFFIX = ".resolve-cache.csv";
+
+    private static final @NotNull String EXTRACTION_WORKERS_PROPERTY = "movemethodgen.extraction.workers";
+
+    private static final @NotNull String CONTEXTS_CACHE_PROPERTY = "movemethodgen.contextsCache";
+
+    private static final @NotNull String CONTEXTS_CACHE_FILE_SUFFIX = ".contexts-cache.csv";
+
+    private static final @NotNull String INCREMENTAL_COMMIT_PROPERTY = "movemethodgen.incremental.commit";
+
+    private static final @NotNull String STREAMING_PROPERTY = "movemethodgen.streaming";
+
+    private final @NotNull Path outputDir;
+
+    private final @Nullable Path previousDir;
+
+    private final @NotNull Logger log;
+
+    private final @NotNull Lock analysisLock;
+
+    /**
+     * @param previousDir dataset generated earlier for the same project which should be updated
+     *                    incrementally, or {@code null} if dataset should be generated from
+     *                    scratch.
+     */
+    public DatasetGenerator(
+        final @NotNull Path outputDir,
+        final @Nullable Path previousDir,
+        final @NotNull Logger log
+    ) {
+        this(outputDir, previousDir, log, new ReentrantLock());
+    }
+
+    /**
+     * @param analysisLock lock which is held while the project is analysed under a single long
+     *                     read action. Path contexts extraction, writing of the dataset and
+     *                     short read actions are done without it.
+     */
+    public DatasetGenerator(
+        final @NotNull Path outputDir,
+        final @Nullable Path previousDir,
+        final @NotNull Logger log,
+        final @NotNull Lock analysisLock
+    ) {
+        this.outputDir = outputDir;
+        this.previousDir = previousDir;
+        this.log = log;
+        this.analysisLock = analysisLock;
+    }
+
+    public void generate(final @NotNull Project project) throws Exception {
+        PersistentResolveCache resolveCache = null;
+        if (Boolean.getBoolean(RESOLVE_CACHE_PROPERTY)) {
+            resolveCache = PersistentResolveCache.load(
+                project,
+                outputDir.resolveSibling(outputDir.getFileName() + RESOLVE_CACHE_FILE_SUFFIX)
+            );
+        }
+
+        ReferenceResolver resolver = resolveCache == null ? ReferenceResolver.DIRECT : resolveCache;
+
+        IncrementalUpdate update = null;
+        if (previousDir != null) {
+            try {
+                update = prepareIncrementalUpdate(project, previousDir);
+            } catch (IOException e) {
+                log.warn("Unable to prepare incremental update, falling back to full generation: " + e.getMessage());
+            }
+        }
+
+        if (update != null && Boolean.getBoolean(STREAMING_PROPERTY)) {
+            log.warn("Streaming mode doesn't support incremental updates, dataset is updated in the regular mode");
+        }
+
+        PathContextCache contextsCache = Boolean.getBoolean(CONTEXTS_CACHE_PROPERTY)
+            ? PathContextCache.load(outputDir.resolveSibling(outputDir.getFileName() + CONTEXTS_CACHE_FILE_SUFFIX))
+            : PathContextCache.inMemory();
+
+        PathContextExtractor extractor = new PathContextExtractor(
+            Integer.getInteger(EXTRACTION_WORKERS_PROPERTY, Runtime.getRuntime().availableProcessors()),
+            contextsCache
+        );
+
+        try {
+            generate(project, resolver, update, extractor);
+        } catch (IncrementalUpdateException e) {
+            log.warn("Incremental update failed, falling back to full generation: " + e.getMessage());
+            generate(project, resolver, null, extractor);
+        }
+
+        log.info("Path contexts cache hits: " + contextsCache.getHits() + ", misses: " + contextsCache.getMisses());
+        contextsCache.save();
+
+        if (resolveCache != null) {
+            log.info(
+                "Resolve cache hits: " + resolveCache.getHits() + ", misses: " + resolveCache.getMisses()
+            );
+
+            resolveCache.save();
+        }
+
+        try {
+            GitUtils.writeMetaInfo(Paths.get(project.getBasePath()), outputDir);
+        } catch (IOException e) {
+            log.warn("Unable to write meta-info: " + e.getMessage());
+        }
+    }
+
+    private @NotNull IncrementalUpdate prepareIncrementalUpdate(
+        final @NotNull Project project,
+        final @NotNull Path previousDir
+    ) throws IOException {
+        String commit = System.getProperty(INCREMENTAL_COMMIT_PROPERTY);
+        if (commit == null) {
+            commit = GitUtils.readMetaInfoCommit(previousDir);
+        }
+
+        IncrementalUpdate update = IncrementalUpdate.prepare(project, previousDir, commit);
+        log.info(
+            "Incremental update of " + previousDir + " since " + commit +
+            ", number of affected files: " + update.getAffectedFiles().size()
+        );
+
+        return update;
+    }
+
+    /**
+     * @param update incremental update of a previous dataset or {@code null} if the dataset
+     *               should be generated from scratch.
+     */
+    private void generate(
+        final @NotNull Project project,
+        final @NotNull ReferenceResolver resolver,
+        final @Nullable IncrementalUpdate update,
+        final @NotNull PathContextExtractor extractor
+    ) throws Exception {
+        if (update == null && Boolean.getBoolean(STREAMING_PROPERTY)) {
+            generateStreaming(project, resolver, extractor);
+            return;
+        }
+
+        PhaseTimings timings = PhaseTimings.getInstance(project);
+
+        final Ref<ContextPathDataset> datasetRef = new Ref<>(null);
+        final Ref<Exception> exceptionRef = new Ref<>(null);
+
+        analysisLock.lock();
+        ProjectInfo info;
+        try {
+            info = ApplicationManager.getApplication().runReadAction(
+                    (Computable<ProjectInfo>) () -> {
+                        ProjectInfo projectInfo = new ProjectInfo(
+                            project,
+                            Integer.getInteger(FILTRATION_WORKERS_PROPERTY, 1),
+                            Boolean.getBoolean(ADAPTIVE_FILTRATION_PROPERTY),
+                            resolver,
+                            update == null ? null : update.getAffectedFiles()
+                        );
+
+                        log.info("Total number of java files: " + projectInfo.getAllJavaFiles().size());
+                        log.info("Total number of source java files: " + projectInfo.getSourceJavaFiles().size());
+                        log.info("Total number of classes: " + projectInfo.getClasses().size());
+                        log.info("Total number of methods: " + projectInfo.getMethods().size());
+
+                        projectInfo.getMethodsFilters().forEach(filter -> {
+                            log.info(filter.getDescription());
+                        });
+
+                        log.info("Number of methods after filtration: " + projectInfo.getMethodsAfterFiltration().size());
+
+                        log.info(
+                            "Methods filters evaluation order: " +
+                            projectInfo.getMethodsFiltersInEvaluationOrder().stream()
+                                .map(FilterWithCounter::getName)
+                                .collect(Collectors.joining(", "))
+                        );
+
+                        projectInfo.getMethodsFilters().forEach(filter -> {
+                            log.info(filter.getStatisticsDescription());
+                        });
+
+                        try {
+                            timings.measure("dataset build", () -> {
+                                Dataset dataset;
+                                if (update == null) {
+                                    dataset = Dataset.createDataset(
+                                        projectInfo.getProject(),
+                                        projectInfo.getRelevantClasses(),
+                                        projectInfo.getMethodsAfterFiltration()
+                                    );
+                                } else {
+                                    dataset = update.createDataset(
+                                        projectInfo.getRelevantClasses(),
+                                        projectInfo.getMethodsAfterFiltration()
+                                    );
+                                }
+
+                                datasetRef.set(new ContextPathDataset(dataset));
+                            });
+                        } catch (Exception e) {
+                            exceptionRef.set(e);
+                        }
+
+                        return projectInfo;
+                    }
+            );
+        } finally {
+            analysisLock.unlock();
+        }
+
+        if (!exceptionRef.isNull()) {
+            throw exceptionRef.get();
+        }
+
+        ContextPathTables tables = timings.compute(
+            "path contexts extraction",
+            () -> ContextPathCsvSerializer.getInstance().createTables(datasetRef.get(), extractor)
+        );
+
+        serialize(
+            info.getMethodsFilters(),
+            update == null ? tables : timings.compute("incremental merge", () -> merge(tables, update)),
+            timings
+        );
+    }
+
+    /**
+     * Generates dataset with {@link StreamingDatasetBuilder}. Methods are filtered by a single
+     * worker in the canonical order of filters, the result is the same as in the regular mode.
+     */
+    private void generateStreaming(
+        final @NotNull Project project,
+        final @NotNull ReferenceResolver resolver,
+        final @NotNull PathContextExtractor extractor
+    ) throws Exception {
+        StreamingDatasetBuilder builder = new StreamingDatasetBuilder(project, resolver, extractor, log);
+        ContextPathTables tables = builder.build();
+
+        serialize(builder.getMethodsFilters(), tables, PhaseTimings.getInstance(project));
+    }
+
+    private void serialize(
+        final @NotNull List<FilterWithCounter<PsiMethod>> methodsFilters,
+        final @NotNull ContextPathTables tables,
+        final @NotNull PhaseTimings timings
+    ) throws IOException {
+        timings.measure(
+            "write filter-stats.json",
+            () -> FilterStatisticsSerializer.getInstance().serialize(methodsFilters, outputDir)
+        );
+
+        ContextPathCsvSerializer.getInstance().serialize(tables, outputDir, timings);
+    }
+
+    /**
+     * Generated tables are written and read back, so that they are merged with the previous
+     * dataset in the same form as it is stored.
+     */
+    private @NotNull ContextPathTables merge(
+        final @NotNull ContextPathTables tables,
+        final @NotNull IncrementalUpdate update
+    ) throws IOException, IncrementalUpdateException {
+        Path generatedDir = Files.createTempDirectory("generate-dataset");
+
+        try {
+            ContextPathCsvSerializer.getInstance().serialize(tables, generatedDir);
+
+            return update.merge(ContextPathCsvSerializer.getInstance().deserializeTables(generatedDir));
+        } finally {
+            FileUtil.delete(generatedDir.toFile());
+        }
+    }
+}
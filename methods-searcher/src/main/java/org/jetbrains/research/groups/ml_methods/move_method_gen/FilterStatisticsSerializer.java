@@ -0,0 +1,63 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.FilterWithCounter;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.LatencyHistogram;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+
+public class FilterStatisticsSerializer {
+    private static final @NotNull FilterStatisticsSerializer INSTANCE = new FilterStatisticsSerializer();
+
+    private static final @NotNull String FILE_NAME = "filter-stats.json";
+
+    private FilterStatisticsSerializer() {
+    }
+
+    public static @NotNull FilterStatisticsSerializer getInstance() {
+        return INSTANCE;
+    }
+
+    public void serialize(
+        final @NotNull List<? extends FilterWithCounter<?>> methodsFilters,
+        final @NotNull Path targetDir
+    ) throws IOException {
+        targetDir.toFile().mkdirs();
+
+        JsonArray filters = new JsonArray();
+        for (FilterWithCounter<?> filter : methodsFilters) {
+            LatencyHistogram latencies = filter.getLatencies();
+
+            JsonObject stats = new JsonObject();
+            stats.addProperty("name", filter.getName());
+            stats.addProperty("invocations", filter.getInvocations());
+            stats.addProperty("accepted", filter.getAccepted());
+            stats.addProperty("rejected", filter.getRejected());
+            stats.addProperty("filtered", filter.getFilteredOut());
+            stats.addProperty("total_nanos", latencies.getTotalNanos());
+            stats.addProperty("mean_nanos", latencies.getMeanNanos());
+            stats.addProperty("p50_nanos", latencies.getPercentileNanos(50));
+            stats.addProperty("p90_nanos", latencies.getPercentileNanos(90));
+            stats.addProperty("p99_nanos", latencies.getPercentileNanos(99));
+            stats.addProperty("max_nanos", latencies.getMaxNanos());
+
+            filters.add(stats);
+        }
+
+        JsonObject root = new JsonObject();
+        root.add("methods_filters", filters);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(targetDir.resolve(FILE_NAME), CREATE_NEW)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(root, writer);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Limits the number of projects which are processed at the same time so that their estimated
+ * memory consumption fits into the heap. A project is admitted only if its estimate fits into
+ * what is left after estimates of running projects, and if the heap currently in use leaves
+ * room for it. A project is always admitted if nothing else is running, so a project which is
+ * too large for the budget is still processed, just alone.
+ */
+public class HeapBudget {
+    /**
+     * Part of the heap which projects may reserve. The rest is left for the application itself
+     * and for estimation errors.
+     */
+    private static final double HEAP_FRACTION = 0.8;
+
+    /**
+     * Heap reserved for a project regardless of its size: project model, indices, caches.
+     */
+    private static final long BASE_PROJECT_BYTES = 256L << 20;
+
+    private static final long RECHECK_INTERVAL_MILLIS = 1000;
+
+    private final int maxProjects;
+
+    private final double bytesPerSourceByte;
+
+    private final long maxHeap = Runtime.getRuntime().maxMemory();
+
+    private final long budget;
+
+    private long reserved = 0;
+
+    private int running = 0;
+
+    /**
+     * @param bytesPerSourceByte expected heap consumption per byte of java sources of a project.
+     */
+    public HeapBudget(final int maxProjects, final double bytesPerSourceByte) {
+        this.maxProjects = maxProjects;
+        this.bytesPerSourceByte = bytesPerSourceByte;
+
+        budget = (long) (maxHeap * HEAP_FRACTION) - usedHeap();
+    }
+
+    /**
+     * Estimates heap which is needed to process project located in the given directory.
+     */
+    public long estimate(final @NotNull Path projectDir) {
+        long sourceBytes = 0;
+        try (Stream<Path> files = Files.walk(projectDir)) {
+            sourceBytes = files
+                .filter(it -> it.toString().endsWith(".java"))
+                .mapToLong(it -> it.toFile().length())
+                .sum();
+        } catch (IOException | UncheckedIOException ignored) {
+            // estimate only by the base size
+        }
+
+        return BASE_PROJECT_BYTES + (long) (sourceBytes * bytesPerSourceByte);
+    }
+
+    /**
+     * Blocks until a project with the given estimate can be admitted and reserves its estimate.
+     */
+    public synchronized void acquire(final long estimate) throws InterruptedException {
+        while (running > 0 && !fits(estimate)) {
+            wait(RECHECK_INTERVAL_MILLIS);
+        }
+
+        running++;
+        reserved += estimate;
+    }
+
+    public synchronized void release(final long estimate) {
+        running--;
+        reserved -= estimate;
+
+        notifyAll();
+    }
+
+    private boolean fits(final long estimate) {
+        return running < maxProjects &&
+               reserved + estimate <= budget &&
+               usedHeap() + estimate <= maxHeap * HEAP_FRACTION;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
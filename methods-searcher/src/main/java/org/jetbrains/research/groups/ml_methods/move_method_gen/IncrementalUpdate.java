@@ -0,0 +1,507 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen;
+
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.*;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.PsiSearchHelper;
+import com.intellij.psi.search.PsiShortNamesCache;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.exceptions.IncrementalUpdateException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+import static org.jetbrains.research.groups.ml_methods.move_method_gen.utils.GitUtils.git;
+
+/**
+ * Regeneration of a previously generated dataset after the project has moved to another
+ * revision. Only methods from affected files are analysed again, records of all other methods
+ * are copied from the previous dataset.
+ *
+ * A file is affected if it was changed since the previous revision, if it mentions a name of
+ * some class or member declared in a changed file (in its old or new version), or if it declares
+ * a supertype of some class from a changed file. This covers everything methods filters and
+ * search of targets look at: targets of references, relevance of classes used as types of
+ * parameters and inheritance hierarchies.
+ *
+ * Ids of records stay the same if their name, file and position among records with the same
+ * name and file are the same. New records get ids which are greater than all previous ones.
+ */
+public class IncrementalUpdate {
+    private final @NotNull Project project;
+
+    private final @NotNull ContextPathTables previous;
+
+    private final @NotNull Set<VirtualFile> affectedFiles;
+
+    private final @NotNull Set<String> affectedPaths;
+
+    private IncrementalUpdate(
+        final @NotNull Project project,
+        final @NotNull ContextPathTables previous,
+        final @NotNull Set<VirtualFile> affectedFiles,
+        final @NotNull Set<String> affectedPaths
+    ) {
+        this.project = project;
+        this.previous = previous;
+        this.affectedFiles = affectedFiles;
+        this.affectedPaths = affectedPaths;
+    }
+
+    /**
+     * Finds files affected by changes made since the given commit.
+     *
+     * @param previousDir directory with the dataset generated at the given commit.
+     */
+    public static @NotNull IncrementalUpdate prepare(
+        final @NotNull Project project,
+        final @NotNull Path previousDir,
+        final @NotNull String commit
+    ) throws IOException {
+        Path projectDir = Paths.get(project.getBasePath());
+        ContextPathTables previous = ContextPathCsvSerializer.getInstance().deserializeTables(previousDir);
+
+        Set<String> changedPaths = new LinkedHashSet<>();
+        Map<String, String> oldTexts = new LinkedHashMap<>();
+
+        for (String line : git(projectDir, "diff", "--name-status", "--no-renames", "--relative", commit)) {
+            String[] parts = line.split("\t", 2);
+            if (parts.length != 2 || !parts[1].endsWith(".java")) {
+                continue;
+            }
+
+            changedPaths.add(parts[1]);
+            if (!parts[0].startsWith("A")) {
+                oldTexts.put(parts[1], String.join("\n", git(projectDir, "show", commit + ":./" + parts[1])));
+            }
+        }
+
+        for (String path : git(projectDir, "ls-files", "--others", "--exclude-standard")) {
+            if (path.endsWith(".java")) {
+                changedPaths.add(path);
+            }
+        }
+
+        Set<VirtualFile> affectedFiles = ApplicationManager.getApplication().runReadAction(
+            (Computable<Set<VirtualFile>>) () -> findAffectedFiles(project, changedPaths, oldTexts)
+        );
+
+        Set<String> affectedPaths = new HashSet<>(changedPaths);
+        for (VirtualFile file : affectedFiles) {
+            String path = VfsUtilCore.getRelativePath(file, project.getBaseDir());
+            if (path != null) {
+                affectedPaths.add(path);
+            }
+        }
+
+        return new IncrementalUpdate(project, previous, affectedFiles, affectedPaths);
+    }
+
+    public @NotNull Set<VirtualFile> getAffectedFiles() {
+        return Collections.unmodifiableSet(affectedFiles);
+    }
+
+    /**
+     * Creates dataset of the given methods from affected files. Besides classes of these methods
+     * and their targets it contains all classes from affected files which are still used by
+     * points of unaffected methods, so that records of these classes can be regenerated too.
+     */
+    public @NotNull Dataset createDataset(
+        final @NotNull RelevantClasses relevantClasses,
+        final @NotNull List<PsiMethod> methods
+    ) throws IncrementalUpdateException {
+        Set<PsiClass> classes = new LinkedHashSet<>();
+        for (PsiMethod method : methods) {
+            classes.add(method.getContainingClass());
+            classes.addAll(relevantClasses.possibleTargets(method));
+        }
+
+        Map<Integer, ContextPathTables.ClassRecord> previousClasses = classesById(previous);
+        for (int classId : keptClassIds()) {
+            ContextPathTables.ClassRecord record = previousClasses.get(classId);
+            if (isAffected(record.getFile())) {
+                classes.add(findClass(record));
+            }
+        }
+
+        Map<PsiClass, Integer> idOfClass = new HashMap<>();
+        for (PsiClass clazz : classes) {
+            idOfClass.put(clazz, idOfClass.size());
+        }
+
+        List<Dataset.Method> datasetMethods = new ArrayList<>();
+        for (PsiMethod method : methods) {
+            datasetMethods.add(new Dataset.Method(
+                project,
+                method,
+                idOfClass.get(method.getContainingClass()),
+                relevantClasses.possibleTargets(method).stream().mapToInt(idOfClass::get).toArray()
+            ));
+        }
+
+        return new Dataset(project, new ArrayList<>(classes), datasetMethods);
+    }
+
+    /**
+     * Merges tables generated for the dataset created by {@link #createDataset} into the
+     * previous tables.
+     */
+    public @NotNull ContextPathTables merge(
+        final @NotNull ContextPathTables generated
+    ) throws IncrementalUpdateException {
+        Map<Integer, ContextPathTables.ClassRecord> previousClasses = classesById(previous);
+        Map<Integer, ContextPathTables.MethodRecord> previousMethods = methodsById(previous);
+
+        Map<Integer, Integer> classIds = assignIds(
+            generated.getClasses(),
+            previous.getClasses(),
+            ContextPathTables.ClassRecord::getId,
+            it -> key(it.getName(), it.getFile()),
+            ContextPathTables.ClassRecord::getOffset
+        );
+
+        Map<Integer, Integer> methodIds = assignIds(
+            generated.getMethods(),
+            previous.getMethods(),
+            ContextPathTables.MethodRecord::getId,
+            it -> key(it.getName(), it.getFile()),
+            ContextPathTables.MethodRecord::getOffset
+        );
+
+        SortedMap<Integer, List<ContextPathTables.PointRecord>> pointsByMethod = new TreeMap<>();
+        for (ContextPathTables.PointRecord point : previous.getPoints()) {
+            if (!isAffected(previousMethods.get(point.getMethodId()).getFile())) {
+                pointsByMethod.computeIfAbsent(point.getMethodId(), it -> new ArrayList<>()).add(point);
+            }
+        }
+
+        for (ContextPathTables.PointRecord point : generated.getPoints()) {
+            int methodId = methodIds.get(point.getMethodId());
+            pointsByMethod.computeIfAbsent(methodId, it -> new ArrayList<>()).add(
+                new ContextPathTables.PointRecord(methodId, classIds.get(point.getClassId()), point.getLabel())
+            );
+        }
+
+        Map<Integer, ContextPathTables.ClassRecord> generatedClasses = new HashMap<>();
+        for (ContextPathTables.ClassRecord record : generated.getClasses()) {
+            generatedClasses.put(classIds.get(record.getId()), record);
+        }
+
+        Map<Integer, ContextPathTables.MethodRecord> generatedMethods = methodsById(generated);
+
+        SortedSet<Integer> usedClassIds = new TreeSet<>();
+        pointsByMethod.values().forEach(points -> points.forEach(it -> usedClassIds.add(it.getClassId())));
+
+        List<ContextPathTables.ClassRecord> classes = new ArrayList<>();
+        List<ContextPathTables.MethodRecord> methods = new ArrayList<>();
+
+        for (int classId : usedClassIds) {
+            ContextPathTables.ClassRecord previousClass = previousClasses.get(classId);
+            if (previousClass != null && !isAffected(previousClass.getFile())) {
+                classes.add(previousClass);
+                previousClass.getMethodIds().forEach(it -> methods.add(previousMethods.get(it)));
+                continue;
+            }
+
+            ContextPathTables.ClassRecord generatedClass = generatedClasses.get(classId);
+            if (generatedClass == null) {
+                throw new IncrementalUpdateException("No up to date record for class with id " + classId);
+            }
+
+            classes.add(new ContextPathTables.ClassRecord(
+                classId,
+                generatedClass.getName(),
+                generatedClass.getMethodIds().stream().map(methodIds::get).collect(Collectors.toList()),
+                generatedClass.getFile(),
+                generatedClass.getOffset()
+            ));
+
+            for (int methodId : generatedClass.getMethodIds()) {
+                ContextPathTables.MethodRecord method = generatedMethods.get(methodId);
+
+                methods.add(new ContextPathTables.MethodRecord(
+                    methodIds.get(methodId),
+                    method.getName(),
+                    method.getContext(),
+                    method.getFile(),
+                    method.getOffset(),
+                    classId,
+                    method.getTargetIds().stream().map(classIds::get).collect(Collectors.toList())
+                ));
+            }
+        }
+
+        methods.sort(Comparator.comparingInt(ContextPathTables.MethodRecord::getId));
+
+        List<ContextPathTables.PointRecord> points = new ArrayList<>();
+        pointsByMethod.values().forEach(points::addAll);
+
+        return new ContextPathTables(classes, methods, points);
+    }
+
+    private boolean isAffected(final @NotNull String path) {
+        return affectedPaths.contains(path.replace('\\', '/'));
+    }
+
+    /**
+     * Ids of classes used by points of methods from unaffected files.
+     */
+    private @NotNull Set<Integer> keptClassIds() {
+        Map<Integer, ContextPathTables.MethodRecord> previousMethods = methodsById(previous);
+
+        Set<Integer> classIds = new LinkedHashSet<>();
+        for (ContextPathTables.PointRecord point : previous.getPoints()) {
+            if (!isAffected(previousMethods.get(point.getMethodId()).getFile())) {
+                classIds.add(point.getClassId());
+            }
+        }
+
+        return classIds;
+    }
+
+    private @NotNull PsiClass findClass(
+        final @NotNull ContextPathTables.ClassRecord record
+    ) throws IncrementalUpdateException {
+        VirtualFile file = project.getBaseDir().findFileByRelativePath(record.getFile());
+        PsiFile psiFile = file == null ? null : PsiManager.getInstance(project).findFile(file);
+
+        if (psiFile != null) {
+            PsiClass[] classes = JavaPsiFacade.getInstance(project).findClasses(
+                record.getName(),
+                GlobalSearchScope.fileScope(psiFile)
+            );
+
+            if (classes.length > 0) {
+                return classes[0];
+            }
+        }
+
+        throw new IncrementalUpdateException(
+            "Class " + record.getName() + " is still used by unaffected methods, but is not found in " + record.getFile()
+        );
+    }
+
+    private static @NotNull Set<VirtualFile> findAffectedFiles(
+        final @NotNull Project project,
+        final @NotNull Set<String> changedPaths,
+        final @NotNull Map<String, String> oldTexts
+    ) {
+        Set<String> names = new HashSet<>();
+        Set<String> superNames = new HashSet<>();
+        Set<PsiClass> classes = new HashSet<>();
+
+        for (String path : changedPaths) {
+            VirtualFile file = project.getBaseDir().findFileByRelativePath(path);
+            PsiFile psiFile = file == null ? null : PsiManager.getInstance(project).findFile(file);
+
+            if (psiFile != null) {
+                collectDeclarations(psiFile, names, superNames, classes);
+            }
+        }
+
+        for (Map.Entry<String, String> oldText : oldTexts.entrySet()) {
+            PsiFile psiFile = PsiFileFactory.getInstance(project).createFileFromText(
+                Paths.get(oldText.getKey()).getFileName().toString(),
+                JavaFileType.INSTANCE,
+                oldText.getValue()
+            );
+
+            collectDeclarations(psiFile, names, superNames, new HashSet<>());
+        }
+
+        GlobalSearchScope scope = GlobalSearchScope.projectScope(project);
+        for (String name : superNames) {
+            classes.addAll(Arrays.asList(PsiShortNamesCache.getInstance(project).getClassesByName(name, scope)));
+        }
+
+        Set<VirtualFile> affected = new LinkedHashSet<>();
+        for (String path : changedPaths) {
+            VirtualFile file = project.getBaseDir().findFileByRelativePath(path);
+            if (file != null) {
+                affected.add(file);
+            }
+        }
+
+        ProjectFileIndex fileIndex = ProjectFileIndex.SERVICE.getInstance(project);
+        for (PsiClass clazz : withAllSupers(classes)) {
+            VirtualFile file = virtualFileOf(clazz);
+            if (file != null && fileIndex.isInContent(file)) {
+                affected.add(file);
+            }
+        }
+
+        PsiSearchHelper searchHelper = PsiSearchHelper.getInstance(project);
+        for (String name : names) {
+            searchHelper.processAllFilesWithWord(name, scope, file -> {
+                VirtualFile virtualFile = file.getVirtualFile();
+                if (file instanceof PsiJavaFile && virtualFile != null) {
+                    affected.add(virtualFile);
+                }
+
+                return true;
+            }, true);
+        }
+
+        return affected;
+    }
+
+    /**
+     * Collects names of all classes and members declared in the given file, names of their
+     * direct supertypes as they are written in the code, and the classes themselves.
+     */
+    private static void collectDeclarations(
+        final @NotNull PsiFile file,
+        final @NotNull Set<String> names,
+        final @NotNull Set<String> superNames,
+        final @NotNull Set<PsiClass> classes
+    ) {
+        file.accept(new JavaRecursiveElementWalkingVisitor() {
+            @Override
+            public void visitClass(final @NotNull PsiClass aClass) {
+                super.visitClass(aClass);
+
+                classes.add(aClass);
+                addName(names, aClass.getName());
+
+                for (PsiReferenceList list : Arrays.asList(aClass.getExtendsList(), aClass.getImplementsList())) {
+                    if (list == null) {
+                        continue;
+                    }
+
+                    for (PsiJavaCodeReferenceElement reference : list.getReferenceElements()) {
+                        addName(superNames, reference.getReferenceName());
+                    }
+                }
+            }
+
+            @Override
+            public void visitMethod(final @NotNull PsiMethod method) {
+                super.visitMethod(method);
+                addName(names, method.getName());
+            }
+
+            @Override
+            public void visitField(final @NotNull PsiField field) {
+                super.visitField(field);
+                addName(names, field.getName());
+            }
+        });
+    }
+
+    private static void addName(final @NotNull Set<String> names, final @Nullable String name) {
+        if (name != null) {
+            names.add(name);
+        }
+    }
+
+    private static @NotNull Set<PsiClass> withAllSupers(final @NotNull Set<PsiClass> classes) {
+        Set<PsiClass> result = new HashSet<>();
+        Deque<PsiClass> queue = new ArrayDeque<>(classes);
+
+        while (!queue.isEmpty()) {
+            PsiClass clazz = queue.poll();
+            if (!result.add(clazz)) {
+                continue;
+            }
+
+            queue.addAll(Arrays.asList(clazz.getSupers()));
+        }
+
+        return result;
+    }
+
+    private static @Nullable VirtualFile virtualFileOf(final @NotNull PsiElement element) {
+        PsiFile file = element.getContainingFile();
+        return file == null ? null : file.getVirtualFile();
+    }
+
+    private static @NotNull Map<Integer, ContextPathTables.ClassRecord> classesById(
+        final @NotNull ContextPathTables tables
+    ) {
+        Map<Integer, ContextPathTables.ClassRecord> result = new HashMap<>();
+        tables.getClasses().forEach(it -> result.put(it.getId(), it));
+
+        return result;
+    }
+
+    private static @NotNull Map<Integer, ContextPathTables.MethodRecord> methodsById(
+        final @NotNull ContextPathTables tables
+    ) {
+        Map<Integer, ContextPathTables.MethodRecord> result = new HashMap<>();
+        tables.getMethods().forEach(it -> result.put(it.getId(), it));
+
+        return result;
+    }
+
+    private static @NotNull String key(final @NotNull String name, final @NotNull String file) {
+        return name + '\0' + file.replace('\\', '/');
+    }
+
+    /**
+     * Maps ids of generated records to final ids. A generated record gets the id of the previous
+     * record with the same name and file and the same position among such records ordered by
+     * offset. Other records get new ids in the order of their generated ids.
+     */
+    private static @NotNull <T> Map<Integer, Integer> assignIds(
+        final @NotNull List<T> generated,
+        final @NotNull List<T> previous,
+        final @NotNull ToIntFunction<T> id,
+        final @NotNull Function<T, String> key,
+        final @NotNull ToIntFunction<T> offset
+    ) {
+        Map<String, Integer> previousIds = new HashMap<>();
+        positionalKeys(previous, key, offset).forEach((record, positionalKey) ->
+            previousIds.put(positionalKey, id.applyAsInt(record))
+        );
+
+        int nextId = previous.stream().mapToInt(id).max().orElse(-1) + 1;
+
+        Map<Integer, Integer> result = new HashMap<>();
+        Map<T, String> keys = positionalKeys(generated, key, offset);
+
+        List<T> ordered = new ArrayList<>(generated);
+        ordered.sort(Comparator.comparingInt(id));
+
+        for (T record : ordered) {
+            Integer finalId = previousIds.get(keys.get(record));
+            if (finalId == null) {
+                finalId = nextId++;
+            }
+
+            result.put(id.applyAsInt(record), finalId);
+        }
+
+        return result;
+    }
+
+    private static @NotNull <T> Map<T, String> positionalKeys(
+        final @NotNull List<T> records,
+        final @NotNull Function<T, String> key,
+        final @NotNull ToIntFunction<T> offset
+    ) {
+        Map<String, List<T>> groups = new HashMap<>();
+        records.forEach(it -> groups.computeIfAbsent(key.apply(it), k -> new ArrayList<>()).add(it));
+
+        Map<T, String> result = new IdentityHashMap<>();
+        groups.forEach((name, group) -> {
+            group.sort(Comparator.comparingInt(offset));
+            for (int i = 0; i < group.size(); i++) {
+                result.put(group.get(i), name + '\0' + i);
+            }
+        });
+
+        return result;
+    }
+}
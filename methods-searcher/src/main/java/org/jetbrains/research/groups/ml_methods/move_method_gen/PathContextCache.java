@@ -0,0 +1,121 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Path contexts of methods keyed by hash of everything extraction depends on: text and name of
+ * a method and parameters of extraction. Can be stored on disk, so that unchanged methods are
+ * never extracted again. Only contexts used by the current run are saved, so contexts of
+ * removed or changed methods don't pile up. Can be used from several threads.
+ */
+public class PathContextCache {
+    private static final @NotNull CSVFormat FORMAT = CSVFormat.RFC4180.withHeader("hash", "context");
+
+    private final @Nullable Path path;
+
+    private final @NotNull Map<String, String> contexts = new ConcurrentHashMap<>();
+
+    /**
+     * Hashes of contexts which were found or put during the current run.
+     */
+    private final @NotNull Set<String> usedHashes = ConcurrentHashMap.newKeySet();
+
+    private final @NotNull LongAdder hits = new LongAdder();
+
+    private final @NotNull LongAdder misses = new LongAdder();
+
+    private PathContextCache(final @Nullable Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Creates cache which lives only during the current run. It still saves extraction of
+     * methods with identical texts.
+     */
+    public static @NotNull PathContextCache inMemory() {
+        return new PathContextCache(null);
+    }
+
+    /**
+     * Reads cache from the given file. If there is no such file the cache is empty.
+     */
+    public static @NotNull PathContextCache load(final @NotNull Path path) throws IOException {
+        PathContextCache cache = new PathContextCache(path);
+        if (!Files.exists(path)) {
+            return cache;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            for (CSVRecord record : FORMAT.withSkipHeaderRecord().parse(reader)) {
+                cache.contexts.put(record.get("hash"), record.get("context"));
+            }
+        }
+
+        return cache;
+    }
+
+    /**
+     * Writes contexts used during the current run to the file the cache was loaded from, does
+     * nothing for in-memory cache. The file is replaced atomically.
+     */
+    public void save() throws IOException {
+        if (path == null) {
+            return;
+        }
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (
+            BufferedWriter writer = Files.newBufferedWriter(tmp);
+            CSVPrinter csvPrinter = new CSVPrinter(writer, FORMAT)
+        ) {
+            for (Map.Entry<String, String> entry : contexts.entrySet()) {
+                if (usedHashes.contains(entry.getKey())) {
+                    csvPrinter.printRecord(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public @Nullable String get(final @NotNull String hash) {
+        String context = contexts.get(hash);
+        if (context == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+            usedHashes.add(hash);
+        }
+
+        return context;
+    }
+
+    public void put(final @NotNull String hash, final @NotNull String context) {
+        contexts.put(hash, context);
+        usedHashes.add(hash);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+}
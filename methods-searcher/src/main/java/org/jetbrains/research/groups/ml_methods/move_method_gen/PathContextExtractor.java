@@ -0,0 +1,180 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen;
+
+import JavaExtractor.Common.CommandLineValues;
+import JavaExtractor.Common.Common;
+import JavaExtractor.ExtractFeaturesTask;
+import JavaExtractor.FeaturesEntities.ProgramFeatures;
+import com.github.javaparser.ParseException;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.PsiMethod;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.exceptions.UnexpectedEmptyContext;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.MethodUtils;
+import org.kohsuke.args4j.CmdLineException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/**
+ * Extracts path contexts of methods with JavaExtractor. Extraction works on snapshots of
+ * methods, so it doesn't need a read action and runs on a pool of workers. Contexts are looked
+ * up in {@link PathContextCache} first.
+ */
+public class PathContextExtractor {
+    private static final int MAX_PATH_LENGTH = 8;
+
+    private static final int MAX_PATH_WIDTH = 2;
+
+    private final int workers;
+
+    private final @NotNull PathContextCache cache;
+
+    private final @NotNull CommandLineValues cmdValues;
+
+    public PathContextExtractor(final int workers, final @NotNull PathContextCache cache) {
+        this.workers = workers;
+        this.cache = cache;
+
+        try {
+            cmdValues = new CommandLineValues(
+                "--max_path_length", Integer.toString(MAX_PATH_LENGTH),
+                "--max_path_width", Integer.toString(MAX_PATH_WIDTH)
+            );
+        } catch (CmdLineException e) {
+            // Arguments are constant, so they are either always valid or never
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Takes everything extraction needs from the given method. Must be called under read action.
+     */
+    public static @NotNull MethodSnapshot snapshot(final @NotNull PsiMethod method) {
+        return new MethodSnapshot(
+            removeDanglingOneLineComments(method.getText()),
+            splitName(method),
+            MethodUtils.fullyQualifiedName(method)
+        );
+    }
+
+    /**
+     * Extracts contexts of the given methods. Order of contexts is the same as order of methods.
+     */
+    public @NotNull List<String> extract(
+        final @NotNull List<MethodSnapshot> methods
+    ) throws IOException, ParseException, UnexpectedEmptyContext {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, workers));
+        try {
+            List<Future<String>> contexts = new ArrayList<>();
+            for (MethodSnapshot method : methods) {
+                contexts.add(executor.submit(() -> extract(method)));
+            }
+
+            List<String> result = new ArrayList<>();
+            for (Future<String> context : contexts) {
+                result.add(context.get());
+            }
+
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Extraction of path contexts is interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+
+            if (cause instanceof ParseException) {
+                throw (ParseException) cause;
+            }
+
+            if (cause instanceof UnexpectedEmptyContext) {
+                throw (UnexpectedEmptyContext) cause;
+            }
+
+            throw new RuntimeException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public @NotNull PathContextCache getCache() {
+        return cache;
+    }
+
+    private @NotNull String extract(
+        final @NotNull MethodSnapshot method
+    ) throws IOException, ParseException, UnexpectedEmptyContext {
+        String hash = hashOf(method);
+
+        String pathContext = cache.get(hash);
+        if (pathContext != null) {
+            return pathContext;
+        }
+
+        ExtractFeaturesTask extractTask = new ExtractFeaturesTask(cmdValues, method.text);
+
+        ArrayList<ProgramFeatures> methodsContexts = new ArrayList<>(
+            extractTask.extractSingleFile()
+                .stream()
+                .filter(it -> it.getName().equals(method.splitName))
+                .limit(1)
+                .collect(Collectors.toList())
+        );
+
+        pathContext = extractTask.featuresToString(methodsContexts);
+        if (pathContext.isEmpty()) {
+            throw new UnexpectedEmptyContext(method.qualifiedName);
+        }
+
+        cache.put(hash, pathContext);
+        return pathContext;
+    }
+
+    private static @NotNull String hashOf(final @NotNull MethodSnapshot method) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update((MAX_PATH_LENGTH + " " + MAX_PATH_WIDTH + " " + method.splitName + "\n").getBytes(StandardCharsets.UTF_8));
+            digest.update(method.text.getBytes(StandardCharsets.UTF_8));
+
+            return StringUtil.toHexString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static @NotNull String removeDanglingOneLineComments(final @NotNull String code) {
+        return code.replaceAll("//.*?\\z", "");
+    }
+
+    private static @NotNull String splitName(final @NotNull PsiMethod method) {
+        return Common.splitToSubtokens(method.getName())
+            .stream()
+            .collect(Collectors.joining(Common.internalSeparator));
+    }
+
+    public static class MethodSnapshot {
+        private final @NotNull String text;
+
+        private final @NotNull String splitName;
+
+        private final @NotNull String qualifiedName;
+
+        private MethodSnapshot(
+            final @NotNull String text,
+            final @NotNull String splitName,
+            final @NotNull String qualifiedName
+        ) {
+            this.text = text;
+            this.splitName = splitName;
+            this.qualifiedName = qualifiedName;
+        }
+    }
+}
@@ -1,18 +1,41 @@
 package org.jetbrains.research.groups.ml_methods.move_method_gen;
 
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.*;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.analysis.InheritanceIndex;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.analysis.MethodFactsCache;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.analysis.ReferenceResolver;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.AdaptiveFilterChain;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.Filter;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.FilterWithCounter;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.StubSafeFilter;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.classes.*;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.methods.*;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.ExtractingUtils;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.PhaseTimings;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.stream.Collectors;
 
 public class ProjectInfo {
+    /**
+     * Number of chunks each filtration worker gets on average. Several small chunks per
+     * worker keep workers busy when filtration cost differs a lot between methods.
+     */
+    private static final int CHUNKS_PER_WORKER = 8;
+
+    private static final int WARM_UP_SAMPLE_SIZE = 500;
+
     private final @NotNull Project project;
 
     private final @NotNull List<PsiJavaFile> allJavaFiles;
@@ -21,37 +44,68 @@ public class ProjectInfo {
 
     private final @NotNull List<PsiClass> classes;
 
-    private final @NotNull List<Filter<PsiClass>> classFilters =
-            new ArrayList<Filter<PsiClass>>() {{
-                add(new TypeParametersFilter());
-                add(new InterfacesFilter());
-                add(new AnnotationTypesFilter());
-                add(new TestsFilter());
-                add(new BuildersFilter());
-                add(new EmptyClassesFilter());
-                add(new AnonymousClassesFilter());
-                add(new InaccessibleClassFilter());
-                add(new GenericsFilter());
-            }};
+    private final @NotNull List<Filter<PsiClass>> classFilters = createClassFilters();
 
     private final @NotNull List<PsiMethod> methods;
 
     private final @NotNull List<FilterWithCounter<PsiMethod>> methodsFilters;
 
+    private final @NotNull List<FilterWithCounter<PsiMethod>> methodsFiltersInEvaluationOrder;
+
+    private final @NotNull Filter<PsiMethod> methodsFiltersChain;
+
     private final @NotNull List<PsiMethod> methodsAfterFiltration;
 
     private final @NotNull AccessorsMap accessorsMap;
 
+    private final @NotNull MethodFactsCache methodFacts;
+
+    private final @NotNull RelevantClasses relevantClasses;
+
+    private final @NotNull InheritanceIndex inheritanceIndex;
+
     public ProjectInfo(final @NotNull Project project) {
+        this(project, 1, false, ReferenceResolver.DIRECT, null);
+    }
+
+    /**
+     * @param filtrationWorkers number of threads which run methods filters along with the
+     *                          calling thread. Each worker takes its own read action. Methods are split into contiguous chunks and
+     *                          results are merged in the original order, so the resulting list is
+     *                          the same as in the case of a single worker.
+     * @param adaptiveFiltration whether methods filters should be reordered according to their
+     *                           cost and rejection rate measured on a sample of methods. Neither
+     *                           the result nor the numbers of methods filtered out by each filter
+     *                           depend on this flag.
+     * @param resolver resolver of references inside of methods bodies which is used by methods
+     *                 filters and by search of possible targets.
+     * @param scope files whose methods should be analysed, {@code null} means all files. Classes
+     *              are always filtered in the whole project, since any relevant class can be a
+     *              target of a method.
+     */
+    public ProjectInfo(
+        final @NotNull Project project,
+        final int filtrationWorkers,
+        final boolean adaptiveFiltration,
+        final @NotNull ReferenceResolver resolver,
+        final @Nullable Set<VirtualFile> scope
+    ) {
         this.project = project;
 
+        PhaseTimings timings = PhaseTimings.getInstance(project);
+
+        long start = System.nanoTime();
         allJavaFiles = ExtractingUtils.extractAllJavaFiles(project);
         sourceJavaFiles = ExtractingUtils.extractSourceJavaFiles(project);
+        timings.record("file extraction", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        List<Filter<PsiClass>> classFiltersInEvaluationOrder = inEvaluationOrder(classFilters);
 
         classes = ExtractingUtils.extractClasses(sourceJavaFiles)
                 .stream()
                 .filter(it -> {
-                    for (Filter<PsiClass> filter : classFilters) {
+                    for (Filter<PsiClass> filter : classFiltersInEvaluationOrder) {
                         if (!filter.test(it)) {
                             return false;
                         }
@@ -60,43 +114,192 @@ public class ProjectInfo {
                     return true;
                 })
                 .collect(Collectors.toList());
+        timings.record("class filtering", System.nanoTime() - start);
 
-        methods = ExtractingUtils.extractMethods(classes);
+        methods = ExtractingUtils.extractMethods(
+            scope == null ? classes : classes.stream()
+                .filter(it -> scope.contains(it.getContainingFile().getVirtualFile()))
+                .collect(Collectors.toList())
+        );
         accessorsMap = new AccessorsMap(methods);
+        methodFacts = new MethodFactsCache(accessorsMap, resolver);
+        timings.record("method facts walk", methodFacts.getWalkLatencies());
+        relevantClasses = new RelevantClasses(classes, methodFacts);
+        inheritanceIndex = new InheritanceIndex(allJavaFiles);
 
-        methodsFilters =
-            new ArrayList<FilterWithCounter<PsiMethod>>() {{
-                add(new FilterWithCounter<>(new StaticMethodsFilter()));
-                add(new FilterWithCounter<>(new ConstructorsFilter()));
-                add(new FilterWithCounter<>(new AbstractMethodsFilter()));
-                add(new FilterWithCounter<>(new GettersFilter()));
-                add(new FilterWithCounter<>(new SettersFilter()));
-                add(new FilterWithCounter<>(new EmptyMethodsFilter()));
-                add(new FilterWithCounter<>(new ExceptionsThrowersFilter()));
-                add(new FilterWithCounter<>(new SingleMethodFilter()));
-                add(new FilterWithCounter<>(new SimpleDelegationsFilter()));
-                add(new FilterWithCounter<>(new PrivateMethodsCallersFilter()));
-                add(new FilterWithCounter<>(new PrivateFieldAccessorsFilter(ProjectInfo.this)));
-                add(new FilterWithCounter<>(new OverridingMethodsFilter()));
-                add(new FilterWithCounter<>(new OverriddenMethodsFilter()));
-                add(new FilterWithCounter<>(new MethodCallWithSuperFilter()));
-                add(new FilterWithCounter<>(new PrivateClassUserFilter()));
-                add(new FilterWithCounter<>(new GenericTypeUserFilter()));
-                add(new FilterWithCounter<>(new NoTargetsMethodsFilter(new RelevantClasses(classes))));
-            }};
-
-        methodsAfterFiltration =
-            methods.stream()
-                .filter(it -> {
-                    for (Filter<PsiMethod> filter : methodsFilters) {
-                        if (!filter.test(it)) {
-                            return false;
-                        }
+        methodsFilters = createMethodsFilters(methodFacts, inheritanceIndex, relevantClasses);
+        for (FilterWithCounter<PsiMethod> filter : methodsFilters) {
+            timings.record("methods filter " + filter.getName(), filter.getLatencies());
+        }
+
+        start = System.nanoTime();
+
+        if (adaptiveFiltration) {
+            // Several filters share facts and targets of a method, each of them is measured with its own walk
+            AdaptiveFilterChain<PsiMethod> chain = new AdaptiveFilterChain<>(methodsFilters, method -> {
+                methodFacts.forget(method);
+                relevantClasses.forget(method);
+            });
+            chain.warmUp(methods, WARM_UP_SAMPLE_SIZE);
+
+            methodsFiltersChain = chain;
+            methodsFiltersInEvaluationOrder = chain.getOrderedFilters();
+        } else {
+            methodsFiltersChain = it -> {
+                for (Filter<PsiMethod> filter : methodsFilters) {
+                    if (!filter.test(it)) {
+                        return false;
                     }
+                }
 
-                    return true;
-                })
-                .collect(Collectors.toList());
+                return true;
+            };
+            methodsFiltersInEvaluationOrder = methodsFilters;
+        }
+
+        if (filtrationWorkers > 1) {
+            methodsAfterFiltration = filterMethodsInParallel(filtrationWorkers);
+        } else {
+            methodsAfterFiltration = filterMethods(methods);
+        }
+        timings.record("methods filtration", System.nanoTime() - start);
+    }
+
+    public static @NotNull List<Filter<PsiClass>> createClassFilters() {
+        return new ArrayList<Filter<PsiClass>>() {{
+            add(new TypeParametersFilter());
+            add(new InterfacesFilter());
+            add(new AnnotationTypesFilter());
+            add(new TestsFilter());
+            add(new BuildersFilter());
+            add(new EmptyClassesFilter());
+            add(new AnonymousClassesFilter());
+            add(new InaccessibleClassFilter());
+            add(new GenericsFilter());
+        }};
+    }
+
+    /**
+     * Stub-safe filters go first, so that syntax trees are built only for classes which pass them.
+     */
+    static @NotNull List<Filter<PsiClass>> inEvaluationOrder(final @NotNull List<Filter<PsiClass>> classFilters) {
+        List<Filter<PsiClass>> result = new ArrayList<>();
+        classFilters.stream().filter(it -> it instanceof StubSafeFilter).forEach(result::add);
+        classFilters.stream().filter(it -> !(it instanceof StubSafeFilter)).forEach(result::add);
+
+        return result;
+    }
+
+    public static @NotNull List<FilterWithCounter<PsiMethod>> createMethodsFilters(
+        final @NotNull MethodFactsCache methodFacts,
+        final @NotNull InheritanceIndex inheritanceIndex,
+        final @NotNull RelevantClasses relevantClasses
+    ) {
+        return new ArrayList<FilterWithCounter<PsiMethod>>() {{
+            add(new FilterWithCounter<>(new StaticMethodsFilter()));
+            add(new FilterWithCounter<>(new ConstructorsFilter()));
+            add(new FilterWithCounter<>(new AbstractMethodsFilter()));
+            add(new FilterWithCounter<>(new GettersFilter()));
+            add(new FilterWithCounter<>(new SettersFilter()));
+            add(new FilterWithCounter<>(new EmptyMethodsFilter()));
+            add(new FilterWithCounter<>(new ExceptionsThrowersFilter()));
+            add(new FilterWithCounter<>(new SingleMethodFilter()));
+            add(new FilterWithCounter<>(new SimpleDelegationsFilter()));
+            add(new FilterWithCounter<>(new PrivateMethodsCallersFilter(methodFacts)));
+            add(new FilterWithCounter<>(new PrivateFieldAccessorsFilter(methodFacts)));
+            add(new FilterWithCounter<>(new OverridingMethodsFilter(inheritanceIndex)));
+            add(new FilterWithCounter<>(new OverriddenMethodsFilter(inheritanceIndex)));
+            add(new FilterWithCounter<>(new MethodCallWithSuperFilter(methodFacts)));
+            add(new FilterWithCounter<>(new PrivateClassUserFilter(methodFacts)));
+            add(new FilterWithCounter<>(new GenericTypeUserFilter(methodFacts)));
+            add(new FilterWithCounter<>(new NoTargetsMethodsFilter(relevantClasses)));
+        }};
+    }
+
+    private @NotNull List<PsiMethod> filterMethods(final @NotNull List<PsiMethod> methods) {
+        return methods.stream().filter(methodsFiltersChain).collect(Collectors.toList());
+    }
+
+    /**
+     * Filters methods by chunks which are shared between the given number of workers and the
+     * calling thread. The caller usually holds a read action already, and a pending write action
+     * doesn't let other threads take a new one, so it never just waits for workers: it filters
+     * chunks itself until none are left. Workers take a read action before they claim a chunk,
+     * hence each claimed chunk is filtered by a thread which holds the read lock, and the caller
+     * waits only for such chunks.
+     */
+    private @NotNull List<PsiMethod> filterMethodsInParallel(final int workers) {
+        int chunkSize = Math.max(1, methods.size() / (workers * CHUNKS_PER_WORKER));
+
+        List<List<PsiMethod>> chunks = new ArrayList<>();
+        for (int from = 0; from < methods.size(); from += chunkSize) {
+            chunks.add(methods.subList(from, Math.min(from + chunkSize, methods.size())));
+        }
+
+        ParallelFiltration filtration = new ParallelFiltration(chunks);
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            for (int i = 0; i < workers; i++) {
+                executor.submit(() -> ApplicationManager.getApplication().runReadAction(filtration::filterChunks));
+            }
+
+            ApplicationManager.getApplication().runReadAction(filtration::filterChunks);
+
+            return filtration.getResult();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private class ParallelFiltration {
+        private final @NotNull List<List<PsiMethod>> chunks;
+
+        private final @NotNull AtomicReferenceArray<List<PsiMethod>> results;
+
+        private final @NotNull AtomicInteger nextChunk = new AtomicInteger();
+
+        private final @NotNull CountDownLatch filteredChunks;
+
+        private final @NotNull AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        private ParallelFiltration(final @NotNull List<List<PsiMethod>> chunks) {
+            this.chunks = chunks;
+            this.results = new AtomicReferenceArray<>(chunks.size());
+            this.filteredChunks = new CountDownLatch(chunks.size());
+        }
+
+        /**
+         * Claims and filters chunks until none are left. Must be called in a read action.
+         */
+        private void filterChunks() {
+            for (int chunk = nextChunk.getAndIncrement(); chunk < chunks.size(); chunk = nextChunk.getAndIncrement()) {
+                try {
+                    results.set(chunk, filterMethods(chunks.get(chunk)));
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    filteredChunks.countDown();
+                }
+            }
+        }
+
+        private @NotNull List<PsiMethod> getResult() throws InterruptedException {
+            filteredChunks.await();
+
+            if (failure.get() != null) {
+                throw new RuntimeException(failure.get());
+            }
+
+            List<PsiMethod> result = new ArrayList<>();
+            for (int chunk = 0; chunk < chunks.size(); chunk++) {
+                result.addAll(results.get(chunk));
+            }
+
+            return result;
+        }
     }
 
     @NotNull
@@ -129,6 +332,11 @@ public class ProjectInfo {
         return methodsFilters;
     }
 
+    @NotNull
+    public List<FilterWithCounter<PsiMethod>> getMethodsFiltersInEvaluationOrder() {
+        return methodsFiltersInEvaluationOrder;
+    }
+
     @NotNull
     public List<PsiMethod> getMethodsAfterFiltration() {
         return methodsAfterFiltration;
@@ -138,4 +346,19 @@ public class ProjectInfo {
     public AccessorsMap getAccessorsMap() {
         return accessorsMap;
     }
+
+    @NotNull
+    public MethodFactsCache getMethodFacts() {
+        return methodFacts;
+    }
+
+    @NotNull
+    public RelevantClasses getRelevantClasses() {
+        return relevantClasses;
+    }
+
+    @NotNull
+    public InheritanceIndex getInheritanceIndex() {
+        return inheritanceIndex;
+    }
 }
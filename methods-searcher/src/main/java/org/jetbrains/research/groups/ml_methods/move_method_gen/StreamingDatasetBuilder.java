@@ -0,0 +1,512 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen;
+
+import com.github.javaparser.ParseException;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleUtil;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.*;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.RelevantClasses.ClassKey;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.analysis.InheritanceIndex;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.analysis.MethodFactsCache;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.analysis.ReferenceResolver;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.exceptions.UnexpectedEmptyContext;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.Filter;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.FilterWithCounter;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.methods.ConstructorsFilter;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.methods.EmptyMethodsFilter;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.MethodUtils;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.PhaseTimings;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.ProjectFileInventory;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the same tables as {@link ProjectInfo}, {@link Dataset} and {@link ContextPathDataset}
+ * do together, but walks the project file by file. Between files only virtual files, keys of
+ * classes and plain records are held, so syntax trees of processed files can be garbage
+ * collected. Ids of classes and methods are assigned in the same order as in the regular
+ * pipeline. Must be used outside of a read action, every file is processed under its own one.
+ */
+public class StreamingDatasetBuilder {
+    /**
+     * Number of methods whose snapshots are collected before their path contexts are extracted.
+     */
+    private static final int EXTRACTION_BATCH_SIZE = 1000;
+
+    private final @NotNull Project project;
+
+    private final @NotNull ReferenceResolver resolver;
+
+    private final @NotNull PathContextExtractor extractor;
+
+    private final @NotNull Logger log;
+
+    private final @NotNull PhaseTimings timings;
+
+    private @NotNull List<FilterWithCounter<PsiMethod>> methodsFilters = Collections.emptyList();
+
+    public StreamingDatasetBuilder(
+        final @NotNull Project project,
+        final @NotNull ReferenceResolver resolver,
+        final @NotNull PathContextExtractor extractor,
+        final @NotNull Logger log
+    ) {
+        this.project = project;
+        this.resolver = resolver;
+        this.extractor = extractor;
+        this.log = log;
+
+        timings = PhaseTimings.getInstance(project);
+    }
+
+    /**
+     * Returns methods filters used by the last {@link #build}. Their counters hold statistics of
+     * the whole project.
+     */
+    public @NotNull List<FilterWithCounter<PsiMethod>> getMethodsFilters() {
+        return methodsFilters;
+    }
+
+    public @NotNull ContextPathTables build() throws IOException, ParseException, UnexpectedEmptyContext {
+        ProjectFileInventory inventory = ProjectFileInventory.getInstance(project);
+
+        long start = System.nanoTime();
+        List<VirtualFile> allFiles = inReadAction(
+            () -> inventory.getVirtualFiles(EnumSet.allOf(ProjectFileInventory.Kind.class))
+        );
+        List<VirtualFile> sourceFiles = inReadAction(
+            () -> inventory.getVirtualFiles(
+                EnumSet.of(ProjectFileInventory.Kind.SOURCE, ProjectFileInventory.Kind.TEST_SOURCE)
+            )
+        );
+        timings.record("file extraction", System.nanoTime() - start);
+
+        log.info("Total number of java files: " + allFiles.size());
+        log.info("Total number of source java files: " + sourceFiles.size());
+
+        List<Filter<PsiClass>> classFilters = ProjectInfo.inEvaluationOrder(ProjectInfo.createClassFilters());
+        Map<ClassKey, Module> moduleOfClass = new LinkedHashMap<>();
+        Set<String> fieldsWithGetter = new HashSet<>();
+        Set<String> fieldsWithSetter = new HashSet<>();
+
+        start = System.nanoTime();
+        int numberOfMethods = 0;
+        for (VirtualFile file : sourceFiles) {
+            numberOfMethods += inReadAction(
+                () -> collectRelevantClasses(file, classFilters, moduleOfClass, fieldsWithGetter, fieldsWithSetter)
+            );
+        }
+        timings.record("class filtering", System.nanoTime() - start);
+
+        log.info("Total number of classes: " + moduleOfClass.size());
+        log.info("Total number of methods: " + numberOfMethods);
+
+        MethodFactsCache methodFacts = new MethodFactsCache(new AccessorsMap(fieldsWithGetter, fieldsWithSetter), resolver);
+        timings.record("method facts walk", methodFacts.getWalkLatencies());
+        RelevantClasses relevantClasses = new RelevantClasses(moduleOfClass, methodFacts);
+        InheritanceIndex inheritanceIndex = inReadAction(() -> new InheritanceIndex(
+            allFiles.stream().map(this::findJavaFile).filter(Objects::nonNull).collect(Collectors.toList())
+        ));
+        methodsFilters = ProjectInfo.createMethodsFilters(methodFacts, inheritanceIndex, relevantClasses);
+        for (FilterWithCounter<PsiMethod> filter : methodsFilters) {
+            timings.record("methods filter " + filter.getName(), filter.getLatencies());
+        }
+
+        Set<VirtualFile> filesWithClasses = moduleOfClass.keySet().stream()
+            .map(ClassKey::getFile)
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+
+        start = System.nanoTime();
+        List<FilteredMethod> filteredMethods = new ArrayList<>();
+        for (VirtualFile file : filesWithClasses) {
+            ApplicationManager.getApplication().runReadAction(
+                () -> filterMethods(file, moduleOfClass.keySet(), relevantClasses, filteredMethods)
+            );
+
+            methodFacts.clearCache();
+            relevantClasses.clearCache();
+            inheritanceIndex.clearCache();
+        }
+        timings.record("methods filtration", System.nanoTime() - start);
+
+        methodsFilters.forEach(filter -> log.info(filter.getDescription()));
+        log.info("Number of methods after filtration: " + filteredMethods.size());
+        log.info(
+            "Methods filters evaluation order: " +
+            methodsFilters.stream().map(FilterWithCounter::getName).collect(Collectors.joining(", "))
+        );
+        methodsFilters.forEach(filter -> log.info(filter.getStatisticsDescription()));
+
+        // Path contexts extraction is a part of the dataset build here, it is also reported on its own
+        start = System.nanoTime();
+
+        // Same order of classes as in Dataset: targets of all methods first, then their containing classes
+        Map<ClassKey, Integer> idOfClass = new LinkedHashMap<>();
+        for (FilteredMethod method : filteredMethods) {
+            method.targets.forEach(it -> idOfClass.putIfAbsent(it, idOfClass.size()));
+        }
+
+        for (FilteredMethod method : filteredMethods) {
+            idOfClass.putIfAbsent(method.containingClass, idOfClass.size());
+        }
+
+        Map<ClassKey, DatasetClass> datasetClasses = collectDatasetClasses(idOfClass.keySet());
+        ContextPathTables tables = createTables(idOfClass, datasetClasses, filteredMethods);
+        timings.record("dataset build", System.nanoTime() - start);
+
+        return tables;
+    }
+
+    /**
+     * Collects relevant classes of the given file along with identities of fields which have
+     * accessors among their methods.
+     *
+     * @return number of methods in relevant classes.
+     */
+    private int collectRelevantClasses(
+        final @NotNull VirtualFile file,
+        final @NotNull List<Filter<PsiClass>> classFilters,
+        final @NotNull Map<ClassKey, Module> moduleOfClass,
+        final @NotNull Set<String> fieldsWithGetter,
+        final @NotNull Set<String> fieldsWithSetter
+    ) {
+        PsiJavaFile javaFile = findJavaFile(file);
+        if (javaFile == null) {
+            return 0;
+        }
+
+        Module module = ModuleUtil.findModuleForFile(file, project);
+
+        int numberOfMethods = 0;
+        for (PsiClass aClass : javaFile.getClasses()) {
+            if (!classFilters.stream().allMatch(it -> it.test(aClass))) {
+                continue;
+            }
+
+            ClassKey key = ClassKey.of(aClass);
+            if (key == null) {
+                continue;
+            }
+
+            moduleOfClass.put(key, module);
+
+            PsiMethod[] methods = aClass.getMethods();
+            numberOfMethods += methods.length;
+
+            AccessorsMap accessorsMap = new AccessorsMap(Arrays.asList(methods));
+            fieldsWithGetter.addAll(accessorsMap.getFieldsWithGetter());
+            fieldsWithSetter.addAll(accessorsMap.getFieldsWithSetter());
+        }
+
+        return numberOfMethods;
+    }
+
+    private void filterMethods(
+        final @NotNull VirtualFile file,
+        final @NotNull Set<ClassKey> classes,
+        final @NotNull RelevantClasses relevantClasses,
+        final @NotNull List<FilteredMethod> filteredMethods
+    ) {
+        PsiJavaFile javaFile = findJavaFile(file);
+        if (javaFile == null) {
+            return;
+        }
+
+        for (PsiClass aClass : javaFile.getClasses()) {
+            ClassKey key = ClassKey.of(aClass);
+            if (!classes.contains(key)) {
+                continue;
+            }
+
+            for (PsiMethod method : aClass.getMethods()) {
+                if (methodsFilters.stream().allMatch(it -> it.test(method))) {
+                    filteredMethods.add(new FilteredMethod(
+                        new Location(file, method.getNode().getStartOffset()),
+                        key,
+                        relevantClasses.possibleTargetKeys(method)
+                    ));
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects names, locations and path contexts of the given classes and of their methods
+     * which get into the dataset. Contexts are extracted in batches outside of read actions.
+     */
+    private @NotNull Map<ClassKey, DatasetClass> collectDatasetClasses(
+        final @NotNull Set<ClassKey> classes
+    ) throws IOException, ParseException, UnexpectedEmptyContext {
+        Set<VirtualFile> files = classes.stream()
+            .map(ClassKey::getFile)
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+
+        Map<ClassKey, DatasetClass> result = new HashMap<>();
+        List<DatasetMethod> pendingMethods = new ArrayList<>();
+        List<PathContextExtractor.MethodSnapshot> pendingSnapshots = new ArrayList<>();
+
+        for (VirtualFile file : files) {
+            ApplicationManager.getApplication().runReadAction(
+                () -> collectDatasetClasses(file, classes, result, pendingMethods, pendingSnapshots)
+            );
+
+            if (pendingMethods.size() >= EXTRACTION_BATCH_SIZE) {
+                extractContexts(pendingMethods, pendingSnapshots);
+            }
+        }
+
+        extractContexts(pendingMethods, pendingSnapshots);
+
+        return result;
+    }
+
+    private void collectDatasetClasses(
+        final @NotNull VirtualFile file,
+        final @NotNull Set<ClassKey> classes,
+        final @NotNull Map<ClassKey, DatasetClass> result,
+        final @NotNull List<DatasetMethod> pendingMethods,
+        final @NotNull List<PathContextExtractor.MethodSnapshot> pendingSnapshots
+    ) {
+        PsiJavaFile javaFile = findJavaFile(file);
+        if (javaFile == null) {
+            return;
+        }
+
+        String path = ContextPathCsvSerializer.getPathToFile(project, file).toString();
+        EmptyMethodsFilter emptyMethodsFilter = new EmptyMethodsFilter();
+        ConstructorsFilter constructorsFilter = new ConstructorsFilter();
+
+        for (PsiClass aClass : javaFile.getClasses()) {
+            ClassKey key = ClassKey.of(aClass);
+            if (!classes.contains(key)) {
+                continue;
+            }
+
+            List<DatasetMethod> methods = new ArrayList<>();
+            for (PsiMethod method : aClass.getMethods()) {
+                if (!emptyMethodsFilter.test(method) || !constructorsFilter.test(method)) {
+                    continue;
+                }
+
+                DatasetMethod datasetMethod = new DatasetMethod(
+                    MethodUtils.fullyQualifiedName(method),
+                    path,
+                    new Location(file, method.getNode().getStartOffset())
+                );
+
+                methods.add(datasetMethod);
+                pendingMethods.add(datasetMethod);
+                pendingSnapshots.add(PathContextExtractor.snapshot(method));
+            }
+
+            result.put(key, new DatasetClass(
+                StringUtil.notNullize(aClass.getQualifiedName()),
+                path,
+                aClass.getNode().getStartOffset(),
+                methods
+            ));
+        }
+    }
+
+    private void extractContexts(
+        final @NotNull List<DatasetMethod> methods,
+        final @NotNull List<PathContextExtractor.MethodSnapshot> snapshots
+    ) throws IOException, ParseException, UnexpectedEmptyContext {
+        long start = System.nanoTime();
+        List<String> contexts = extractor.extract(snapshots);
+        timings.record("path contexts extraction", System.nanoTime() - start);
+
+        for (int i = 0; i < methods.size(); i++) {
+            methods.get(i).context = contexts.get(i);
+        }
+
+        methods.clear();
+        snapshots.clear();
+    }
+
+    /**
+     * Numbers methods of classes in the order of class ids, same as {@link ContextPathDataset}
+     * does, and creates tables of the dataset.
+     */
+    private static @NotNull ContextPathTables createTables(
+        final @NotNull Map<ClassKey, Integer> idOfClass,
+        final @NotNull Map<ClassKey, DatasetClass> datasetClasses,
+        final @NotNull List<FilteredMethod> filteredMethods
+    ) {
+        Map<Location, FilteredMethod> filteredMethodAt = new HashMap<>();
+        for (FilteredMethod method : filteredMethods) {
+            filteredMethodAt.put(method.location, method);
+        }
+
+        Map<Location, Integer> idOfMethod = new HashMap<>();
+        List<ContextPathTables.MethodRecord> methodRecords = new ArrayList<>();
+        List<ContextPathTables.ClassRecord> classRecords = new ArrayList<>();
+
+        for (Map.Entry<ClassKey, Integer> entry : idOfClass.entrySet()) {
+            DatasetClass datasetClass = datasetClasses.get(entry.getKey());
+            if (datasetClass == null) {
+                throw new IllegalStateException("Class " + entry.getKey().getIdentity() + " is not found");
+            }
+
+            List<Integer> methodIds = new ArrayList<>();
+            for (DatasetMethod method : datasetClass.methods) {
+                int methodId = methodRecords.size();
+                idOfMethod.put(method.location, methodId);
+                methodIds.add(methodId);
+
+                FilteredMethod filteredMethod = filteredMethodAt.get(method.location);
+                methodRecords.add(new ContextPathTables.MethodRecord(
+                    methodId,
+                    method.name,
+                    method.context,
+                    method.file,
+                    method.location.offset,
+                    entry.getValue(),
+                    filteredMethod == null ? Collections.emptyList() : idsOf(filteredMethod.targets, idOfClass)
+                ));
+            }
+
+            classRecords.add(new ContextPathTables.ClassRecord(
+                entry.getValue(),
+                datasetClass.name,
+                methodIds,
+                datasetClass.file,
+                datasetClass.offset
+            ));
+        }
+
+        List<ContextPathTables.PointRecord> pointRecords = new ArrayList<>();
+        for (FilteredMethod method : filteredMethods) {
+            Integer methodId = idOfMethod.get(method.location);
+            if (methodId == null) {
+                throw new IllegalStateException("Method at " + method.location.offset + " is not found");
+            }
+
+            pointRecords.add(new ContextPathTables.PointRecord(methodId, idOfClass.get(method.containingClass), 1));
+
+            for (int targetId : idsOf(method.targets, idOfClass)) {
+                pointRecords.add(new ContextPathTables.PointRecord(methodId, targetId, 0));
+            }
+        }
+
+        return new ContextPathTables(classRecords, methodRecords, pointRecords);
+    }
+
+    private static @NotNull List<Integer> idsOf(
+        final @NotNull List<ClassKey> classes,
+        final @NotNull Map<ClassKey, Integer> idOfClass
+    ) {
+        return classes.stream().map(idOfClass::get).collect(Collectors.toList());
+    }
+
+    private @Nullable PsiJavaFile findJavaFile(final @NotNull VirtualFile file) {
+        if (!file.isValid()) {
+            return null;
+        }
+
+        PsiFile psiFile = PsiManager.getInstance(project).findFile(file);
+        return psiFile instanceof PsiJavaFile ? (PsiJavaFile) psiFile : null;
+    }
+
+    private static <T> T inReadAction(final @NotNull Computable<T> computable) {
+        return ApplicationManager.getApplication().runReadAction(computable);
+    }
+
+    private static class Location {
+        private final @NotNull VirtualFile file;
+
+        private final int offset;
+
+        private Location(final @NotNull VirtualFile file, final int offset) {
+            this.file = file;
+            this.offset = offset;
+        }
+
+        @Override
+        public boolean equals(final @Nullable Object other) {
+            if (this == other) {
+                return true;
+            }
+
+            if (other == null || getClass() != other.getClass()) {
+                return false;
+            }
+
+            Location location = (Location) other;
+            return offset == location.offset && file.equals(location.file);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(file, offset);
+        }
+    }
+
+    /**
+     * Method which passed all methods filters.
+     */
+    private static class FilteredMethod {
+        private final @NotNull Location location;
+
+        private final @NotNull ClassKey containingClass;
+
+        private final @NotNull List<ClassKey> targets;
+
+        private FilteredMethod(
+            final @NotNull Location location,
+            final @NotNull ClassKey containingClass,
+            final @NotNull List<ClassKey> targets
+        ) {
+            this.location = location;
+            this.containingClass = containingClass;
+            this.targets = targets;
+        }
+    }
+
+    private static class DatasetClass {
+        private final @NotNull String name;
+
+        private final @NotNull String file;
+
+        private final int offset;
+
+        private final @NotNull List<DatasetMethod> methods;
+
+        private DatasetClass(
+            final @NotNull String name,
+            final @NotNull String file,
+            final int offset,
+            final @NotNull List<DatasetMethod> methods
+        ) {
+            this.name = name;
+            this.file = file;
+            this.offset = offset;
+            this.methods = methods;
+        }
+    }
+
+    private static class DatasetMethod {
+        private final @NotNull String name;
+
+        private final @NotNull String file;
+
+        private final @NotNull Location location;
+
+        private @NotNull String context = "";
+
+        private DatasetMethod(final @NotNull String name, final @NotNull String file, final @NotNull Location location) {
+            this.name = name;
+            this.file = file;
+            this.location = location;
+        }
+    }
+}
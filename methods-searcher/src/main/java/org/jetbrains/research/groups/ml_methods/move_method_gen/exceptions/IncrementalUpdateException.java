@@ -0,0 +1,9 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.exceptions;
+
+import org.jetbrains.annotations.NotNull;
+
+public class IncrementalUpdateException extends Exception {
+    public IncrementalUpdateException(final @NotNull String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,138 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.filters;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Conjunction of filters which evaluates them in the order of decreasing number of rejections
+ * per nanosecond. The order is chosen by running every filter on a sample of items during
+ * {@link #warmUp}. Filters have to be independent of each other, i.e. a filter must not rely on
+ * the fact that some other filter has already accepted an item.
+ *
+ * Filters may share caches, so that the first filter which needs some data pays for it and the
+ * rest get it for free. To measure every filter by its own cost, the chain can be given a hook
+ * which drops whatever is cached for an item. The hook is called before every evaluation during
+ * warm up, outside of measured time.
+ *
+ * Filtered out items are attributed to filters as if the chain was evaluated in the canonical
+ * order: when an item is rejected, all the filters which precede the rejecting one in the
+ * canonical order and haven't been evaluated yet are checked too.
+ */
+public class AdaptiveFilterChain<T> implements Filter<T> {
+    private final @NotNull List<FilterWithCounter<T>> filters;
+
+    private final @NotNull Map<T, Boolean> warmUpVerdicts = new IdentityHashMap<>();
+
+    private final @NotNull Consumer<T> forgetCached;
+
+    private volatile @NotNull int[] order;
+
+    public AdaptiveFilterChain(final @NotNull List<FilterWithCounter<T>> filters) {
+        this(filters, it -> {});
+    }
+
+    /**
+     * @param forgetCached drops everything that filters have cached for the given item.
+     */
+    public AdaptiveFilterChain(
+        final @NotNull List<FilterWithCounter<T>> filters,
+        final @NotNull Consumer<T> forgetCached
+    ) {
+        this.filters = filters;
+        this.forgetCached = forgetCached;
+        order = IntStream.range(0, filters.size()).toArray();
+    }
+
+    /**
+     * Evaluates all filters on evenly spaced sample of items and reorders filters according to
+     * gathered statistics. Must be called before the chain is shared between several threads.
+     * Sample items are counted only once: later calls to {@link #test} return saved verdicts.
+     */
+    public void warmUp(final @NotNull List<T> items, final int sampleSize) {
+        if (items.isEmpty() || sampleSize <= 0) {
+            return;
+        }
+
+        long[] nanos = new long[filters.size()];
+        long[] rejections = new long[filters.size()];
+
+        int step = Math.max(1, items.size() / sampleSize);
+        for (int itemIndex = 0; itemIndex < items.size(); itemIndex += step) {
+            T item = items.get(itemIndex);
+
+            int firstRejecting = -1;
+            for (int index = 0; index < filters.size(); index++) {
+                forgetCached.accept(item);
+
+                long start = System.nanoTime();
+                boolean accepted = filters.get(index).evaluate(item);
+                nanos[index] += System.nanoTime() - start;
+
+                if (!accepted) {
+                    rejections[index]++;
+                    if (firstRejecting == -1) {
+                        firstRejecting = index;
+                    }
+                }
+            }
+
+            if (firstRejecting != -1) {
+                filters.get(firstRejecting).countFilteredOut();
+            }
+
+            warmUpVerdicts.put(item, firstRejecting == -1);
+        }
+
+        order = IntStream.range(0, filters.size())
+            .boxed()
+            .sorted(
+                Comparator.<Integer>comparingDouble(index -> -(double) rejections[index] / Math.max(1, nanos[index]))
+                    .thenComparingLong(index -> nanos[index])
+                    .thenComparingInt(index -> index)
+            )
+            .mapToInt(it -> it)
+            .toArray();
+    }
+
+    public @NotNull List<FilterWithCounter<T>> getOrderedFilters() {
+        return Arrays.stream(order).mapToObj(filters::get).collect(Collectors.toList());
+    }
+
+    @Override
+    public boolean test(final T t) {
+        Boolean verdict = warmUpVerdicts.get(t);
+        if (verdict != null) {
+            return verdict;
+        }
+
+        int[] order = this.order;
+        for (int position = 0; position < order.length; position++) {
+            if (!filters.get(order[position]).evaluate(t)) {
+                filters.get(firstRejectingInCanonicalOrder(t, order, position)).countFilteredOut();
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int firstRejectingInCanonicalOrder(final T t, final @NotNull int[] order, final int position) {
+        boolean[] evaluated = new boolean[filters.size()];
+        for (int i = 0; i < position; i++) {
+            evaluated[order[i]] = true;
+        }
+
+        int rejecting = order[position];
+        for (int index = 0; index < rejecting; index++) {
+            if (!evaluated[index] && !filters.get(index).evaluate(t)) {
+                return index;
+            }
+        }
+
+        return rejecting;
+    }
+}
@@ -1,11 +1,29 @@
 package org.jetbrains.research.groups.ml_methods.move_method_gen.filters;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.LatencyHistogram;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Filter wrapper which gathers statistics of the wrapped filter: how many items it has checked
+ * and rejected and how much time it took. Counters are striped, so the same instance can be used
+ * by several filtration workers simultaneously.
+ *
+ * Number of rejected items is a property of the filter alone, while number of filtered out items
+ * is a property of the chain: an item is filtered out by the first filter which rejects it in the
+ * canonical order of the chain. {@link #test} counts both, chains which evaluate filters in some
+ * other order use {@link #evaluate} and attribute filtered out items themselves.
+ */
 public class FilterWithCounter<T> implements Filter<T> {
     private final @NotNull Filter<T> filter;
 
-    private int filteredOut = 0;
+    private final @NotNull LongAdder rejected = new LongAdder();
+
+    private final @NotNull LongAdder filteredOut = new LongAdder();
+
+    private final @NotNull LatencyHistogram latencies = new LatencyHistogram();
 
     public FilterWithCounter(final @NotNull Filter<T> filter) {
         this.filter = filter;
@@ -13,19 +31,69 @@ public class FilterWithCounter<T> implements Filter<T> {
 
     @Override
     public boolean test(T t) {
+        boolean result = evaluate(t);
+        if (!result) {
+            countFilteredOut();
+        }
+
+        return result;
+    }
+
+    public boolean evaluate(T t) {
+        long start = System.nanoTime();
         boolean result = filter.test(t);
+        latencies.record(System.nanoTime() - start);
+
         if (!result) {
-            ++filteredOut;
+            rejected.increment();
         }
 
         return result;
     }
 
+    public void countFilteredOut() {
+        filteredOut.increment();
+    }
+
+    public @NotNull Filter<T> getFilter() {
+        return filter;
+    }
+
+    public @NotNull String getName() {
+        return filter.getClass().getSimpleName();
+    }
+
+    public long getInvocations() {
+        return latencies.getCount();
+    }
+
+    public long getAccepted() {
+        return getInvocations() - getRejected();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
     public int getFilteredOut() {
-        return filteredOut;
+        return filteredOut.intValue();
+    }
+
+    public @NotNull LatencyHistogram getLatencies() {
+        return latencies;
     }
 
     public @NotNull String getDescription() {
-        return filter.getClass().getSimpleName() + " filtered: " + filteredOut;
+        return getName() + " filtered: " + getFilteredOut();
+    }
+
+    public @NotNull String getStatisticsDescription() {
+        return getName() + " invocations: " + getInvocations() +
+            ", accepted: " + getAccepted() +
+            ", rejected: " + getRejected() +
+            ", total: " + TimeUnit.NANOSECONDS.toMillis(latencies.getTotalNanos()) + " ms" +
+            ", p50: " + TimeUnit.NANOSECONDS.toMicros(latencies.getPercentileNanos(50)) + " us" +
+            ", p90: " + TimeUnit.NANOSECONDS.toMicros(latencies.getPercentileNanos(90)) + " us" +
+            ", p99: " + TimeUnit.NANOSECONDS.toMicros(latencies.getPercentileNanos(99)) + " us";
     }
 }
@@ -0,0 +1,10 @@
+package org.jetbrains.research.groups.ml_methods.move_method_gen.filters;
+
+/**
+ * Marker of filters which use only information available from stubs: names, kinds, modifiers
+ * and type parameters of classes and their files and packages. Such filters don't make IDE
+ * build syntax trees of files, so they are applied before all other filters.
+ */
+public interface StubSafeFilter<T> extends Filter<T> {
+
+}
@@ -2,11 +2,11 @@ package org.jetbrains.research.groups.ml_methods.move_method_gen.filters.classes
 
 import com.intellij.psi.PsiClass;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.Filter;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.StubSafeFilter;
 
 import java.util.function.Predicate;
 
-public class AnonymousClassesFilter implements Filter<PsiClass> {
+public class AnonymousClassesFilter implements StubSafeFilter<PsiClass> {
     @Override
     public boolean test(final @NotNull PsiClass psiClass) {
         String className = psiClass.getName();
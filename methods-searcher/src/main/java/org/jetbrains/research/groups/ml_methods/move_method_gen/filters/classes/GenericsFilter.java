@@ -2,9 +2,9 @@ package org.jetbrains.research.groups.ml_methods.move_method_gen.filters.classes
 
 import com.intellij.psi.PsiClass;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.Filter;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.StubSafeFilter;
 
-public class GenericsFilter implements Filter<PsiClass> {
+public class GenericsFilter implements StubSafeFilter<PsiClass> {
     @Override
     public boolean test(final @NotNull PsiClass psiClass) {
         return !psiClass.hasTypeParameters();
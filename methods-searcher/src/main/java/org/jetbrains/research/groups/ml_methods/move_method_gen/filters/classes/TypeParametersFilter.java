@@ -3,11 +3,11 @@ package org.jetbrains.research.groups.ml_methods.move_method_gen.filters.classes
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiTypeParameter;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.Filter;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.StubSafeFilter;
 
 import java.util.function.Predicate;
 
-public class TypeParametersFilter implements Filter<PsiClass> {
+public class TypeParametersFilter implements StubSafeFilter<PsiClass> {
     @Override
     public boolean test(final @NotNull PsiClass psiClass) {
         return !(psiClass instanceof PsiTypeParameter);
@@ -17,6 +17,6 @@ public class NoTargetsMethodsFilter implements Filter<PsiMethod> {
 
     @Override
     public boolean test(final @NotNull PsiMethod psiMethod) {
-        return !relevantClasses.possibleTargets(psiMethod).isEmpty();
+        return !relevantClasses.possibleTargetKeys(psiMethod).isEmpty();
     }
 }
@@ -1,42 +1,20 @@
 package org.jetbrains.research.groups.ml_methods.move_method_gen.filters.methods;
 
-import com.intellij.lang.jvm.JvmModifier;
-import com.intellij.openapi.util.Ref;
-import com.intellij.psi.*;
+import com.intellij.psi.PsiMethod;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.analysis.MethodFacts.Disqualifier;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.analysis.MethodFactsCache;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.Filter;
-import org.jetbrains.research.groups.ml_methods.move_method_gen.utils.MethodUtils;
-
-import java.util.Optional;
 
 public class PrivateClassUserFilter implements Filter<PsiMethod> {
-    @Override
-    public boolean test(final @NotNull PsiMethod psiMethod) {
-        final Ref<Boolean> resultRef = new Ref<>(true);
-
-        new JavaRecursiveElementVisitor() {
-            @Override
-            public void visitElement(final @NotNull PsiElement element) {
-                super.visitElement(element);
-
-                if (!(element instanceof PsiJavaCodeReferenceElement)) {
-                    return;
-                }
+    private final @NotNull MethodFactsCache methodFacts;
 
-                PsiJavaCodeReferenceElement reference = (PsiJavaCodeReferenceElement) element;
-                PsiElement resolved = reference.resolve();
-
-                if (!(resolved instanceof PsiClass)) {
-                    return;
-                }
-
-                PsiClass referencedClass = (PsiClass) resolved;
-                if (referencedClass.hasModifier(JvmModifier.PRIVATE)) {
-                    resultRef.set(false);
-                }
-            }
-        }.visitElement(psiMethod);
+    public PrivateClassUserFilter(final @NotNull MethodFactsCache methodFacts) {
+        this.methodFacts = methodFacts;
+    }
 
-        return resultRef.get();
+    @Override
+    public boolean test(final @NotNull PsiMethod psiMethod) {
+        return !methodFacts.get(psiMethod).has(Disqualifier.PRIVATE_CLASS_USAGE);
     }
 }
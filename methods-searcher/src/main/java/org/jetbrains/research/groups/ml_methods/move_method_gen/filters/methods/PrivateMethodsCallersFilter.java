@@ -1,35 +1,20 @@
 package org.jetbrains.research.groups.ml_methods.move_method_gen.filters.methods;
 
-import com.intellij.openapi.util.Ref;
-import com.intellij.psi.*;
+import com.intellij.psi.PsiMethod;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.analysis.MethodFacts.Disqualifier;
+import org.jetbrains.research.groups.ml_methods.move_method_gen.analysis.MethodFactsCache;
 import org.jetbrains.research.groups.ml_methods.move_method_gen.filters.Filter;
 
-import java.util.function.Predicate;
-
 public class PrivateMethodsCallersFilter implements Filter<PsiMethod> {
-    @Override
-    public boolean test(final @NotNull PsiMethod psiMethod) {
-        final Ref<Boolean> resultRef = new Ref<>(true);
-
-        new JavaRecursiveElementVisitor() {
-            @Override
-            public void visitMethodCallExpression(
-                final @NotNull PsiMethodCallExpression expression
-            ) {
-                super.visitMethodCallExpression(expression);
+    private final @NotNull MethodFactsCache methodFacts;
 
-                PsiMethod calledMethod = expression.resolveMethod();
-                if (calledMethod == null) {
-                    return;
-                }
-
-                if (!calledMethod.hasModifierProperty(PsiModifier.PUBLIC)) {
-                    resultRef.set(false);
-                }
-            }
-        }.visitElement(psiMethod);
+    public PrivateMethodsCallersFilter(final @NotNull MethodFactsCache methodFacts) {
+        this.methodFacts = methodFacts;
+    }
 
-        return resultRef.get();
+    @Override
+    public boolean test(final @NotNull PsiMethod psiMethod) {
+        return !methodFacts.get(psiMethod).has(Disqualifier.NON_PUBLIC_METHOD_CALL);
     }
 }